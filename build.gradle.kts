@@ -6,6 +6,7 @@ plugins {
     base
     java
     kotlin("jvm") version "1.7.10"
+    id("me.champeau.jmh") version "0.6.6"
 }
 
 group = "electionguard.viewer"
@@ -36,6 +37,7 @@ dependencies {
     implementation(libs.gson)
     implementation(libs.jsr305)
     implementation(libs.flogger)
+    implementation(libs.jcommander)
 
     implementation(files("libs/uibase.jar"))
     implementation("electionguard-kotlin-multiplatform:electionguard-kotlin-multiplatform-jvm:1.0-SNAPSHOT")
@@ -71,6 +73,11 @@ tasks.getByName<Test>("test") {
     useJUnitPlatform()
 }
 
+// run with ./gradlew jmh; the gc profiler reports allocation per operation
+jmh {
+    profilers.set(listOf("gc"))
+}
+
 tasks {
     register("fatJar", Jar::class.java) {
         archiveClassifier.set("all")
@@ -0,0 +1,81 @@
+package electionguard.json;
+
+import electionguard.core.ElementModP;
+import electionguard.core.ElementModQ;
+import electionguard.core.GroupContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static electionguard.core.GroupCommonKt.safeBase16ToElementModP;
+import static electionguard.core.GroupCommonKt.safeBase16ToElementModQ;
+import static electionguard.viewer.KUtils.productionGroup;
+
+/** Base16Decoder against safeBase16ToElementModP/Q, using values taken from a ballot. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class Base16Benchmark {
+  private static final Pattern pad = Pattern.compile("\"pad\": \"([0-9A-Fa-f]+)\"");
+  private static final Pattern challenge = Pattern.compile("\"challenge\": \"([0-9A-Fa-f]+)\"");
+
+  @Param({"src/test/data/electionRecord25May2022/submitted_ballots/submitted_ballot_9402450000000000231.json"})
+  public String ballotFile;
+
+  private final GroupContext group = productionGroup();
+  private String pHex;
+  private String qHex;
+
+  @Setup
+  public void setup() throws IOException {
+    String ballotJson = Files.readString(Path.of(ballotFile));
+    pHex = firstMatch(pad, ballotJson);
+    qHex = firstMatch(challenge, ballotJson);
+  }
+
+  private static String firstMatch(Pattern pattern, String json) {
+    Matcher matcher = pattern.matcher(json);
+    if (!matcher.find()) {
+      throw new IllegalStateException("No match for " + pattern);
+    }
+    return matcher.group(1);
+  }
+
+  @Benchmark
+  public ElementModP safeBase16ModP() {
+    return safeBase16ToElementModP(group, pHex);
+  }
+
+  @Benchmark
+  public ElementModP decoderModP() {
+    return Base16Decoder.toElementModP(group, pHex);
+  }
+
+  @Benchmark
+  public ElementModQ safeBase16ModQ() {
+    return safeBase16ToElementModQ(group, qHex);
+  }
+
+  @Benchmark
+  public ElementModQ decoderModQ() {
+    return Base16Decoder.toElementModQ(group, qHex);
+  }
+}
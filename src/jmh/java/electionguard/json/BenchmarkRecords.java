@@ -0,0 +1,86 @@
+package electionguard.json;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Election records of a given size for the benchmarks, made by copying the test record and replicating
+ * its ballots under new ids. The ballots are not valid, since their ids are in their hashes, but they parse
+ * like real ones. Made once in java.io.tmpdir and reused by later runs.
+ */
+class BenchmarkRecords {
+  static final Path TEST_RECORD = Path.of("src/test/data/electionRecord25May2022");
+  static final String BALLOTS_DIR = "submitted_ballots";
+
+  /** A copy of the test record with nballots ballots. */
+  static synchronized Path record(int nballots) throws IOException {
+    Path dir = Path.of(System.getProperty("java.io.tmpdir"), "egbench-" + nballots);
+    Path ballotsDir = dir.resolve(BALLOTS_DIR);
+    if (Files.isDirectory(ballotsDir) && count(ballotsDir) == nballots) {
+      return dir;
+    }
+    copyTree(TEST_RECORD, dir);
+
+    List<Path> templates = new ArrayList<>();
+    try (Stream<Path> files = Files.list(TEST_RECORD.resolve(BALLOTS_DIR))) {
+      files.sorted().forEach(templates::add);
+    }
+    for (int i = 0; i < nballots; i++) {
+      Path template = templates.get(i % templates.size());
+      String templateId = ballotId(template);
+      String id = String.format("bench%09d", i);
+      String json = Files.readString(template).replace("\"" + templateId + "\"", "\"" + id + "\"");
+      Files.writeString(ballotsDir.resolve("submitted_ballot_" + id + ".json"), json);
+    }
+    return dir;
+  }
+
+  /** The first ballot file of a record. */
+  static File firstBallot(Path record) {
+    File[] files = record.resolve(BALLOTS_DIR).toFile().listFiles();
+    if (files == null || files.length == 0) {
+      throw new IllegalStateException("No ballots in " + record);
+    }
+    return files[0];
+  }
+
+  private static String ballotId(Path ballotFile) {
+    String name = ballotFile.getFileName().toString();
+    return name.substring("submitted_ballot_".length(), name.length() - ".json".length());
+  }
+
+  /** Copy everything but the ballots, and empty the ballot directory. */
+  private static void copyTree(Path from, Path to) throws IOException {
+    try (Stream<Path> files = Files.walk(from)) {
+      for (Path file : files.toList()) {
+        Path relative = from.relativize(file);
+        if (relative.startsWith(BALLOTS_DIR) && !relative.toString().equals(BALLOTS_DIR)) {
+          continue;
+        }
+        Path target = to.resolve(relative.toString());
+        if (Files.isDirectory(file)) {
+          Files.createDirectories(target);
+        } else if (!file.getFileName().toString().endsWith(".zip")) {
+          Files.copy(file, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+      }
+    }
+    try (Stream<Path> old = Files.list(to.resolve(BALLOTS_DIR))) {
+      for (Path file : old.toList()) {
+        Files.delete(file);
+      }
+    }
+  }
+
+  private static long count(Path dir) throws IOException {
+    try (Stream<Path> files = Files.list(dir)) {
+      return files.count();
+    }
+  }
+}
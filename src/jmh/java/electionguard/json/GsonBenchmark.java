@@ -0,0 +1,54 @@
+package electionguard.json;
+
+import com.google.gson.Gson;
+import electionguard.ballot.EncryptedBallot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building a Gson per ballot, as the nested deserializers used to, against the shared instance.
+ * Compare gc.alloc.rate.norm between the two.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GsonBenchmark {
+
+  @Param({"src/test/data/electionRecord25May2022/submitted_ballots/submitted_ballot_9402450000000000231.json"})
+  public String ballotFile;
+
+  private String ballotJson;
+
+  @Setup
+  public void setup() throws IOException {
+    ballotJson = Files.readString(Path.of(ballotFile));
+  }
+
+  @Benchmark
+  public EncryptedBallot rebuildGsonPerBallot() {
+    Gson gson = GsonTypeAdapters.createEnhancedGson();
+    return gson.fromJson(ballotJson, EncryptedBallot.class);
+  }
+
+  @Benchmark
+  public EncryptedBallot sharedGson() {
+    return GsonTypeAdapters.enhancedGson().fromJson(ballotJson, EncryptedBallot.class);
+  }
+}
@@ -0,0 +1,64 @@
+package electionguard.json;
+
+import com.google.gson.JsonElement;
+import electionguard.ballot.EncryptedBallot;
+import electionguard.ballot.Manifest;
+import electionguard.ballot.PlaintextTally;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading the single files of the test record: a ballot, the decrypted tally and the manifest,
+ * and writing a ballot back to JSON. For hex decoding see Base16Benchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JsonReadBenchmark {
+  private String ballotFile;
+  private String tallyFile;
+  private JsonConsumer consumer;
+  private EncryptedBallot ballot;
+
+  @Setup
+  public void setup() throws IOException {
+    ballotFile = BenchmarkRecords.firstBallot(BenchmarkRecords.TEST_RECORD).getPath();
+    tallyFile = BenchmarkRecords.TEST_RECORD.resolve("tally.json").toString();
+    consumer = new JsonConsumer(BenchmarkRecords.TEST_RECORD.toString());
+    ballot = JsonConsumer.readEncryptedBallot(ballotFile);
+  }
+
+  @Benchmark
+  public EncryptedBallot readEncryptedBallot() {
+    return JsonConsumer.readEncryptedBallot(ballotFile);
+  }
+
+  @Benchmark
+  public PlaintextTally readPlaintextTally() {
+    return JsonConsumer.readPlaintextTally(tallyFile);
+  }
+
+  @Benchmark
+  public Manifest readManifest() {
+    return consumer.readManifest();
+  }
+
+  @Benchmark
+  public JsonElement serializeEncryptedBallot() {
+    return EncryptedBallotPojo.serialize(ballot);
+  }
+}
@@ -0,0 +1,68 @@
+package electionguard.json;
+
+import electionguard.ballot.EncryptedBallot;
+import electionguard.publish.ElectionRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opening a whole record of nballots ballots, as the viewer does: manifest, tallies, then every ballot,
+ * read one at a time or in parallel.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RecordOpenBenchmark {
+
+  @Param({"100", "1000"})
+  public int nballots;
+
+  private Path record;
+
+  @Setup
+  public void setup() throws IOException {
+    record = BenchmarkRecords.record(nballots);
+  }
+
+  @Benchmark
+  public void openSequential(Blackhole bh) throws IOException {
+    ElectionRecord electionRecord = open(new JsonConsumer(record.toString()), bh);
+    for (EncryptedBallot ballot : electionRecord.encryptedBallots(null)) {
+      bh.consume(ballot);
+    }
+  }
+
+  @Benchmark
+  public void openParallel(Blackhole bh) throws IOException, InterruptedException {
+    JsonConsumer consumer = new JsonConsumer(record.toString());
+    open(consumer, bh);
+    List<EncryptedBallot> ballots = consumer.readEncryptedBallots();
+    bh.consume(ballots);
+  }
+
+  private static ElectionRecord open(JsonConsumer consumer, Blackhole bh) throws IOException {
+    ElectionRecord electionRecord = consumer.readElectionRecord();
+    bh.consume(electionRecord.manifest());
+    bh.consume(electionRecord.encryptedTally());
+    bh.consume(electionRecord.decryptedTally());
+    return electionRecord;
+  }
+}
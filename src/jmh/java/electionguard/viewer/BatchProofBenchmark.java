@@ -0,0 +1,83 @@
+package electionguard.viewer;
+
+import electionguard.json.JsonConsumer;
+import electionguard.json.SelectionProof;
+import electionguard.publish.ElectionRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Verifying the ballots of a record one ballot at a time with BallotVerifier, against the BatchProofVerifier,
+ * single threaded. Both end to end benchmarks read each ballot; the batch one reads it with its selection proofs,
+ * which keeps the proof commitments from the same parse. batchProofs leaves out the reading, to show what the batch
+ * arithmetic costs: a Jacobi symbol on each of the 6 elements of a proof, and the naive multi-exponentiation,
+ * which squares once per bit of the weights.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BatchProofBenchmark {
+  @Param({"src/test/data/electionRecord25May2022"})
+  public String topdir;
+
+  private JsonConsumer consumer;
+  private BallotVerifier ballotVerifier;
+  private BatchProofVerifier batchVerifier;
+  private final List<String> ballotIds = new ArrayList<>();
+  private final List<SelectionProof> proofs = new ArrayList<>();
+
+  @Setup
+  public void setup() throws IOException {
+    consumer = new JsonConsumer(topdir);
+    ElectionRecord record = consumer.readElectionRecord();
+    ballotVerifier = new BallotVerifier(record, KUtils.productionGroup());
+    batchVerifier = new BatchProofVerifier(record, KUtils.productionGroup());
+    for (JsonConsumer.BallotProofs ballot : consumer.iteratorBallotProofs()) {
+      ballotIds.add(ballot.ballot().getBallotId());
+      proofs.addAll(ballot.proofs());
+    }
+  }
+
+  @Benchmark
+  public boolean perBallot() {
+    boolean ok = true;
+    for (String id : ballotIds) {
+      ok &= ballotVerifier.verify(consumer.findEncryptedBallot(id));
+    }
+    return ok;
+  }
+
+  @Benchmark
+  public boolean batched() {
+    boolean ok = true;
+    List<SelectionProof> all = new ArrayList<>();
+    for (String id : ballotIds) {
+      JsonConsumer.BallotProofs ballot = consumer.readBallotProofs(id);
+      ok &= ballotVerifier.verifyContests(ballot.ballot());
+      all.addAll(ballot.proofs());
+    }
+    return ok && batchVerifier.failures(all).isEmpty();
+  }
+
+  @Benchmark
+  public List<SelectionProof> batchProofs() {
+    return batchVerifier.failures(proofs);
+  }
+}
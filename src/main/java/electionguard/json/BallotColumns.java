@@ -0,0 +1,356 @@
+package electionguard.json;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import electionguard.ballot.EncryptedBallot;
+import electionguard.core.DisjunctiveChaumPedersenProofKnownNonce;
+import electionguard.core.ElGamalCiphertext;
+
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
+
+/**
+ * A columnar binary export of every selection of every encrypted ballot, placeholders included, for audits that
+ * scan a few columns of all the ciphertexts. The ballot columns have one row per ballot, and the selection columns
+ * one row per selection, whose BALLOT_ROW is the row of its ballot in the ballot columns.
+ * <p>
+ * While the ballots stream through, each column is written to its own temporary file, holding one ballot at a time.
+ * The column files are then concatenated, followed by a footer giving each column's name, width, offset and length,
+ * the number of ballot rows and of selection rows, then the footer's offset and MAGIC. A reader seeks to one column
+ * and scans it alone.
+ * <p>
+ * Fixed width columns are big-endian, with P and Q elements left padded with zeros to
+ * BallotSnapshot.P_BYTES and Q_BYTES, so row i is at offset + i * width. A missing ciphertext or proof is all zeros.
+ * STATE has the codes of the JSON record: 1 is CAST, 2 is SPOILED, 3 is UNKNOWN, and -1 is a missing state.
+ * Strings are variable width: an int length, then the UTF-8 bytes; a null string has length -1 and is scanned as empty.
+ * <pre>
+ *   BallotColumns -in recordDir -out ballots.egbc
+ * </pre>
+ */
+public class BallotColumns {
+  static final int MAGIC = 0x45474243; // "EGBC"
+  static final int VERSION = 2;
+  static final String SUFFIX = ".egbc";
+  private static final int BUFFER = 1 << 16;
+  private static final int P = BallotSnapshot.P_BYTES;
+  private static final int Q = BallotSnapshot.Q_BYTES;
+
+  /** The columns, in the order they are in the file. A width of 0 is a string column. */
+  public enum Column {
+    BALLOT_ID(0, true), STYLE_ID(0, true), STATE(1, true), TIMESTAMP(8, true),
+    BALLOT_ROW(4, false), CONTEST_SEQ(4, false), SELECTION_SEQ(4, false), PLACEHOLDER(1, false),
+    PAD(P, false), DATA(P, false), PROOF0_C(Q, false), PROOF0_R(Q, false), PROOF1_C(Q, false), PROOF1_R(Q, false),
+    PROOF_C(Q, false);
+
+    public final int width;
+    public final boolean perBallot; // one row per ballot, else one per selection
+
+    Column(int width, boolean perBallot) {
+      this.width = width;
+      this.perBallot = perBallot;
+    }
+  }
+
+  private static class CommandLine {
+    @Parameter(names = {"-in"}, order = 0, description = "Directory or zip containing the JSON election record", required = true)
+    String inputDir;
+
+    @Parameter(names = {"-out"}, order = 1, description = "File to write the columns to", required = true)
+    String outputFile;
+
+    @Parameter(names = {"-h", "--help"}, order = 9, description = "Display this help and exit", help = true)
+    boolean help = false;
+
+    private final JCommander jc;
+
+    CommandLine(String progName, String[] args) throws ParameterException {
+      this.jc = new JCommander(this);
+      this.jc.parse(args);
+      jc.setProgramName(progName);
+    }
+
+    void printUsage() {
+      StringBuilder sb = new StringBuilder();
+      this.jc.usage(sb);
+      System.out.println(sb);
+    }
+  }
+
+  public static void main(String[] args) {
+    String progName = BallotColumns.class.getName();
+    CommandLine cmdLine;
+    try {
+      cmdLine = new CommandLine(progName, args);
+      if (cmdLine.help) {
+        cmdLine.printUsage();
+        return;
+      }
+    } catch (ParameterException e) {
+      System.err.println(e.getMessage());
+      System.err.printf("Try '%s --help' for more information.%n", progName);
+      System.exit(2);
+      return;
+    }
+
+    long start = System.nanoTime();
+    try (JsonConsumer consumer = new JsonConsumer(cmdLine.inputDir)) {
+      long nrows = write(consumer.iteratorEncryptedBallots(), Path.of(cmdLine.outputFile));
+      System.out.printf("Wrote %d selections to %s in %.1f secs%n", nrows, cmdLine.outputFile,
+              (System.nanoTime() - start) * 1.0e-9);
+    } catch (Exception e) {
+      System.err.printf("Failed writing the columns: %s%n", e.getMessage());
+      System.exit(2);
+    }
+  }
+
+  /** Write the ballots and their selections to the file, replacing it, and return the number of selection rows. */
+  public static long write(Iterable<EncryptedBallot> ballots, Path file) throws IOException {
+    Path dir = file.toAbsolutePath().getParent();
+    Files.createDirectories(dir);
+    Path tmpDir = Files.createTempDirectory(dir, "columns");
+    Map<Column, Path> columnFiles = new EnumMap<>(Column.class);
+    Map<Column, DataOutputStream> outs = new EnumMap<>(Column.class);
+    Path tmp = tmpDir.resolve("all" + SUFFIX);
+    try {
+      long nrows = 0;
+      int nballots = 0;
+      try {
+        for (Column column : Column.values()) {
+          Path columnFile = tmpDir.resolve(column.name());
+          columnFiles.put(column, columnFile);
+          outs.put(column, new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(columnFile), BUFFER)));
+        }
+        for (EncryptedBallot ballot : ballots) {
+          nrows += writeBallot(outs, ballot, nballots);
+          nballots = Math.addExact(nballots, 1);
+        }
+      } finally {
+        for (DataOutputStream out : outs.values()) {
+          out.close();
+        }
+      }
+
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), BUFFER))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        long offset = 8;
+        Map<Column, Long> offsets = new EnumMap<>(Column.class);
+        for (Column column : Column.values()) {
+          offsets.put(column, offset);
+          offset += Files.copy(columnFiles.get(column), out);
+        }
+        long footer = offset;
+        out.writeInt(Column.values().length);
+        for (Column column : Column.values()) {
+          BallotSnapshot.writeString(out, column.name());
+          out.writeInt(column.width);
+          out.writeLong(offsets.get(column));
+          out.writeLong(Files.size(columnFiles.get(column)));
+        }
+        out.writeLong(nballots);
+        out.writeLong(nrows);
+        out.writeLong(footer);
+        out.writeInt(MAGIC);
+      }
+      Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      return nrows;
+    } finally {
+      try (Stream<Path> leftover = Files.list(tmpDir)) {
+        for (Path path : leftover.toList()) {
+          Files.deleteIfExists(path);
+        }
+      }
+      Files.deleteIfExists(tmpDir);
+    }
+  }
+
+  private static int writeBallot(Map<Column, DataOutputStream> outs, EncryptedBallot ballot, int ballotRow)
+          throws IOException {
+    BallotSnapshot.writeString(outs.get(Column.BALLOT_ID), ballot.getBallotId());
+    BallotSnapshot.writeString(outs.get(Column.STYLE_ID), ballot.getBallotStyleId());
+    outs.get(Column.STATE).writeByte(stateCode(ballot.getState()));
+    outs.get(Column.TIMESTAMP).writeLong(ballot.getTimestamp());
+
+    int nrows = 0;
+    for (EncryptedBallot.Contest contest : ballot.getContests()) {
+      for (EncryptedBallot.Selection selection : contest.getSelections()) {
+        outs.get(Column.BALLOT_ROW).writeInt(ballotRow);
+        outs.get(Column.CONTEST_SEQ).writeInt(contest.getSequenceOrder());
+        outs.get(Column.SELECTION_SEQ).writeInt(selection.getSequenceOrder());
+        outs.get(Column.PLACEHOLDER).writeBoolean(selection.isPlaceholderSelection());
+
+        ElGamalCiphertext ciphertext = selection.getCiphertext();
+        if (ciphertext != null) {
+          BallotSnapshot.writeP(outs.get(Column.PAD), ciphertext.getPad());
+          BallotSnapshot.writeP(outs.get(Column.DATA), ciphertext.getData());
+        } else {
+          outs.get(Column.PAD).write(new byte[P]);
+          outs.get(Column.DATA).write(new byte[P]);
+        }
+        DisjunctiveChaumPedersenProofKnownNonce proof = selection.getProof();
+        if (proof != null) {
+          BallotSnapshot.writeQ(outs.get(Column.PROOF0_C), proof.getProof0().getC());
+          BallotSnapshot.writeQ(outs.get(Column.PROOF0_R), proof.getProof0().getR());
+          BallotSnapshot.writeQ(outs.get(Column.PROOF1_C), proof.getProof1().getC());
+          BallotSnapshot.writeQ(outs.get(Column.PROOF1_R), proof.getProof1().getR());
+          BallotSnapshot.writeQ(outs.get(Column.PROOF_C), proof.getC());
+        } else {
+          for (Column column : new Column[] {Column.PROOF0_C, Column.PROOF0_R, Column.PROOF1_C, Column.PROOF1_R, Column.PROOF_C}) {
+            outs.get(column).write(new byte[Q]);
+          }
+        }
+        nrows++;
+      }
+    }
+    return nrows;
+  }
+
+  /** The code of the state in the STATE column, the same as in the JSON record. */
+  static int stateCode(@Nullable EncryptedBallot.BallotState state) {
+    if (state == null) {
+      return -1;
+    }
+    return switch (state) {
+      case CAST -> 1;
+      case SPOILED -> 2;
+      default -> 3;
+    };
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+
+  /** Reads the columns of a file written by write(). Each scan opens the file again, and reads only its column. */
+  public static class Reader {
+    private final Path file;
+    private final long nballots;
+    private final long nrows;
+    private final Map<Column, long[]> extents = new EnumMap<>(Column.class); // offset, length
+
+    public Reader(Path file) throws IOException {
+      this.file = file;
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+        long size = channel.size();
+        ByteBuffer trailer = channel.map(FileChannel.MapMode.READ_ONLY, size - 12, 12);
+        long footer = trailer.getLong();
+        if (trailer.getInt() != MAGIC) {
+          throw new IOException("Not a ballot column file: " + file);
+        }
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, 8);
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+          throw new IOException("Unsupported ballot column file: " + file);
+        }
+        ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, footer, size - 12 - footer);
+        int ncolumns = in.getInt();
+        for (int i = 0; i < ncolumns; i++) {
+          String name = BallotSnapshot.readString(in);
+          int width = in.getInt();
+          long offset = in.getLong();
+          long length = in.getLong();
+          Column column = Column.valueOf(name);
+          if (column.width != width) {
+            throw new IOException("Column " + name + " has width " + width + ", expected " + column.width);
+          }
+          extents.put(column, new long[] {offset, length});
+        }
+        this.nballots = in.getLong();
+        this.nrows = in.getLong();
+      }
+    }
+
+    /** The number of rows of the selection columns. */
+    public long rows() {
+      return nrows;
+    }
+
+    /** The number of rows of the ballot columns. */
+    public long ballots() {
+      return nballots;
+    }
+
+    /** The number of rows of this column. */
+    public long rows(Column column) {
+      return column.perBallot ? nballots : nrows;
+    }
+
+    /**
+     * Call the visitor with each row of the column, in order. For a fixed width column the buffer has width bytes,
+     * for a string column it has the UTF-8 bytes. The buffer is reused, so copy what you keep.
+     */
+    public void scan(Column column, Consumer<ByteBuffer> visitor) throws IOException {
+      long[] extent = extents.get(column);
+      if (extent == null) {
+        throw new IOException("No column " + column + " in " + file);
+      }
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+        channel.position(extent[0]);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), BUFFER));
+        byte[] row = new byte[Math.max(column.width, 256)];
+        for (long i = 0; i < rows(column); i++) {
+          int len = column.width > 0 ? column.width : in.readInt();
+          if (len < 0) { // a null string
+            visitor.accept(ByteBuffer.allocate(0));
+            continue;
+          }
+          if (len > row.length) {
+            row = new byte[len];
+          }
+          if (in.readNBytes(row, 0, len) != len) {
+            throw new EOFException("Column " + column + " is truncated at row " + i);
+          }
+          visitor.accept(ByteBuffer.wrap(row, 0, len));
+        }
+      }
+    }
+
+    public void scanStrings(Column column, Consumer<String> visitor) throws IOException {
+      scan(column, row -> visitor.accept(StandardCharsets.UTF_8.decode(row).toString()));
+    }
+
+    /** Scan a 1 or 4 byte column as ints. */
+    public void scanInts(Column column, IntConsumer visitor) throws IOException {
+      scan(column, row -> visitor.accept(column.width == 1 ? row.get() : row.getInt()));
+    }
+
+    public void scanLongs(Column column, LongConsumer visitor) throws IOException {
+      scan(column, row -> visitor.accept(row.getLong()));
+    }
+
+    /** The bytes of one row of a fixed width column, read without scanning. */
+    public byte[] read(Column column, long row) throws IOException {
+      if (column.width == 0 || row < 0 || row >= rows(column)) {
+        throw new IllegalArgumentException("Can't read row " + row + " of " + column);
+      }
+      byte[] result = new byte[column.width];
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+        ByteBuffer buffer = ByteBuffer.wrap(result);
+        long position = extents.get(column)[0] + row * column.width;
+        while (buffer.hasRemaining()) {
+          if (channel.read(buffer, position + buffer.position()) < 0) {
+            throw new EOFException("Column " + column + " is truncated at row " + row);
+          }
+        }
+      }
+      return result;
+    }
+  }
+}
@@ -0,0 +1,110 @@
+package electionguard.json;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import electionguard.ballot.EncryptedBallot;
+import kotlin.jvm.functions.Function1;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+
+/**
+ * The common ballot predicates: ballot state, ballot style and a timestamp range. Null means don't care.
+ * Since these only look at the top level fields of a ballot, JsonConsumer checks them against the ballot
+ * header, or the BallotIndex, and skips decoding the contests of ballots that don't match.
+ */
+public class BallotFilter implements Function1<EncryptedBallot, Boolean> {
+  @Nullable
+  private final EncryptedBallot.BallotState state;
+  @Nullable
+  private final String styleId;
+  @Nullable
+  private final Long fromTimestamp; // inclusive
+  @Nullable
+  private final Long toTimestamp; // inclusive
+
+  public BallotFilter(@Nullable EncryptedBallot.BallotState state, @Nullable String styleId,
+                      @Nullable Long fromTimestamp, @Nullable Long toTimestamp) {
+    this.state = state;
+    this.styleId = styleId;
+    this.fromTimestamp = fromTimestamp;
+    this.toTimestamp = toTimestamp;
+  }
+
+  public static BallotFilter byState(EncryptedBallot.BallotState state) {
+    return new BallotFilter(state, null, null, null);
+  }
+
+  public static BallotFilter byStyle(String styleId) {
+    return new BallotFilter(null, styleId, null, null);
+  }
+
+  public static BallotFilter byTimestamp(@Nullable Long fromTimestamp, @Nullable Long toTimestamp) {
+    return new BallotFilter(null, null, fromTimestamp, toTimestamp);
+  }
+
+  public boolean accepts(@Nullable EncryptedBallot.BallotState ballotState, @Nullable String ballotStyleId, long timestamp) {
+    if (state != null && state != ballotState) {
+      return false;
+    }
+    if (styleId != null && !styleId.equals(ballotStyleId)) {
+      return false;
+    }
+    if (fromTimestamp != null && timestamp < fromTimestamp) {
+      return false;
+    }
+    return toTimestamp == null || timestamp <= toTimestamp;
+  }
+
+  public boolean accepts(BallotIndex.Entry entry) {
+    return accepts(entry.state(), entry.styleId(), entry.timestamp());
+  }
+
+  @Override
+  public Boolean invoke(EncryptedBallot ballot) {
+    return accepts(ballot.getState(), ballot.getBallotStyleId(), ballot.getTimestamp());
+  }
+
+  /**
+   * Decide from the top level fields of a ballot's JSON. Nested values are skipped without being decoded,
+   * and reading stops as soon as every field this filter looks at has been seen.
+   */
+  boolean acceptsHeader(JsonReader in) throws IOException {
+    boolean needState = state != null;
+    boolean needStyle = styleId != null;
+    boolean needTimestamp = fromTimestamp != null || toTimestamp != null;
+
+    EncryptedBallot.BallotState ballotState = null;
+    String ballotStyleId = null;
+    long timestamp = 0;
+
+    in.beginObject();
+    while ((needState || needStyle || needTimestamp) && in.hasNext()) {
+      String name = in.nextName();
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        continue;
+      }
+      switch (name) {
+        case "style_id" -> {
+          ballotStyleId = in.nextString();
+          needStyle = false;
+        }
+        case "timestamp" -> {
+          timestamp = in.nextLong();
+          needTimestamp = false;
+        }
+        case "state" -> {
+          ballotState = switch (in.nextInt()) {
+            case 1 -> EncryptedBallot.BallotState.CAST;
+            case 2 -> EncryptedBallot.BallotState.SPOILED;
+            default -> EncryptedBallot.BallotState.UNKNOWN;
+          };
+          needState = false;
+        }
+        default -> in.skipValue();
+      }
+    }
+    return accepts(ballotState, ballotStyleId, timestamp);
+  }
+}
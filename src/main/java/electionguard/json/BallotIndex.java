@@ -0,0 +1,140 @@
+package electionguard.json;
+
+import electionguard.ballot.EncryptedBallot;
+import electionguard.core.UInt256;
+
+import javax.annotation.Nullable;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Index of the ballots in a BallotSnapshot: the id, style, state, timestamp and confirmation code of each ballot,
+ * and the offset of its record in the snapshot. Written alongside the snapshot, with the same fingerprint.
+ * Loaded into memory sorted by ballot id, so a ballot can be found by binary search and read on demand,
+ * without holding any ballots.
+ */
+public class BallotIndex {
+  static final int MAGIC = 0x45474249; // "EGBI"
+  static final int VERSION = 1;
+  static final String SUFFIX = ".egbi";
+
+  /** One ballot in the index. */
+  public record Entry(String ballotId, String styleId, @Nullable EncryptedBallot.BallotState state, long timestamp,
+                      @Nullable UInt256 code, @Nullable UInt256 codeSeed, long offset) {
+
+    /** The entry for a ballot; offset is -1 if the ballot is not in a snapshot. */
+    public static Entry of(EncryptedBallot ballot, long offset) {
+      return new Entry(ballot.getBallotId(), ballot.getBallotStyleId(), ballot.getState(), ballot.getTimestamp(),
+              ballot.getCode(), ballot.getCodeSeed(), offset);
+    }
+  }
+
+  private final List<Entry> entries; // sorted by ballotId
+
+  private BallotIndex(List<Entry> entries) {
+    this.entries = entries;
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  /** All entries, sorted by ballot id. */
+  public List<Entry> entries() {
+    return Collections.unmodifiableList(entries);
+  }
+
+  @Nullable
+  public Entry find(String ballotId) {
+    int lo = 0;
+    int hi = entries.size() - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      int cmp = entries.get(mid).ballotId().compareTo(ballotId);
+      if (cmp < 0) {
+        lo = mid + 1;
+      } else if (cmp > 0) {
+        hi = mid - 1;
+      } else {
+        return entries.get(mid);
+      }
+    }
+    return null;
+  }
+
+  /** Read an index file, checking that it was written with the given fingerprint. Return null if not. */
+  @Nullable
+  static BallotIndex read(Path indexPath, String fingerprint) throws IOException {
+    if (!Files.exists(indexPath)) {
+      return null;
+    }
+    ByteBuffer in;
+    try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.READ)) {
+      in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    if (in.getInt() != MAGIC || in.getInt() != VERSION || !fingerprint.equals(BallotSnapshot.readString(in))) {
+      return null;
+    }
+    int count = in.getInt();
+    List<Entry> entries = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      String ballotId = BallotSnapshot.readString(in);
+      String styleId = BallotSnapshot.readString(in);
+      int state = in.get();
+      long timestamp = in.getLong();
+      UInt256 code = BallotSnapshot.readUInt256(in);
+      UInt256 codeSeed = BallotSnapshot.readUInt256(in);
+      long offset = in.getLong();
+      entries.add(new Entry(ballotId, styleId, state < 0 ? null : EncryptedBallot.BallotState.values()[state],
+              timestamp, code, codeSeed, offset));
+    }
+    entries.sort(Comparator.comparing(Entry::ballotId));
+    return new BallotIndex(entries);
+  }
+
+  /** Collects entries while a snapshot is written, then writes the index file. */
+  static class Writer implements Closeable {
+    private final List<Entry> entries = new ArrayList<>();
+    private final Path indexPath;
+    private final String fingerprint;
+
+    Writer(Path indexPath, String fingerprint) {
+      this.indexPath = indexPath;
+      this.fingerprint = fingerprint;
+    }
+
+    void add(EncryptedBallot ballot, long offset) {
+      entries.add(Entry.of(ballot, offset));
+    }
+
+    @Override
+    public void close() throws IOException {
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexPath), 1 << 16))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        BallotSnapshot.writeString(out, fingerprint);
+        out.writeInt(entries.size());
+        for (Entry entry : entries) {
+          BallotSnapshot.writeString(out, entry.ballotId());
+          BallotSnapshot.writeString(out, entry.styleId());
+          out.writeByte(entry.state() == null ? -1 : entry.state().ordinal());
+          out.writeLong(entry.timestamp());
+          BallotSnapshot.writeUInt256(out, entry.code());
+          BallotSnapshot.writeUInt256(out, entry.codeSeed());
+          out.writeLong(entry.offset());
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,559 @@
+package electionguard.json;
+
+import com.google.common.flogger.FluentLogger;
+import electionguard.ballot.EncryptedBallot;
+import electionguard.core.ConstantChaumPedersenProofKnownNonce;
+import electionguard.core.DisjunctiveChaumPedersenProofKnownNonce;
+import electionguard.core.ElGamalCiphertext;
+import electionguard.core.ElementModP;
+import electionguard.core.ElementModQ;
+import electionguard.core.GenericChaumPedersenProof;
+import electionguard.core.GroupContext;
+import electionguard.core.UInt256;
+
+import javax.annotation.Nullable;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.Stream;
+
+import static electionguard.viewer.KUtils.productionGroup;
+
+/**
+ * A compact binary copy of a record's encrypted ballots, so that reopening a record does not reparse the JSON.
+ * There is one snapshot file per record in the cache directory, named by a hash of the record's path.
+ * <p>
+ * The header holds a fingerprint of the name, size and modification time of the top level JSON files, the ballot
+ * files and the files in spoiled_ballots. A snapshot whose fingerprint no longer matches is stale.
+ * Each ballot is a length-prefixed record; P elements are 512 bytes and Q elements 32 bytes, fixed width.
+ * Snapshots are read through memory-mapped windows.
+ * <p>
+ * The cache directory is kept under MAX_CACHE_BYTES: after each write, the least recently used snapshots and
+ * their indexes are deleted, see evict().
+ */
+public class BallotSnapshot {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+  private static final GroupContext group = productionGroup();
+
+  static final int MAGIC = 0x45474253; // "EGBS"
+  static final int VERSION = 1;
+  static final String SUFFIX = ".egbs";
+  static final int P_BYTES = 512;
+  static final int Q_BYTES = 32;
+  private static final long WINDOW = 64L * 1024 * 1024;
+  public static final long MAX_CACHE_BYTES = 4L * 1024 * 1024 * 1024;
+  private static final long STALE_TMP_MS = 60L * 60 * 1000;
+
+  private final JsonElectionRecordPath paths;
+  private final Path snapshotPath;
+
+  public BallotSnapshot(Path cacheDir, JsonElectionRecordPath paths) {
+    this.paths = paths;
+    String name = HexFormat.of().formatHex(sha256(paths.topPath().toString().getBytes(StandardCharsets.UTF_8)));
+    this.snapshotPath = cacheDir.resolve(name.substring(0, 32) + SUFFIX);
+  }
+
+  public Path snapshotPath() {
+    return snapshotPath;
+  }
+
+  /**
+   * Hash of the name, size and modification time of every file the snapshot depends on. The files are listed
+   * lazily with one stat each, and each file's hash is added into the total, so the order of the listing doesn't
+   * matter and the listing is never held in memory. Compute it once and pass it to isCurrent(), write() and
+   * readIndex(), since it costs a stat per ballot.
+   */
+  public String fingerprint() throws IOException {
+    long[] sum = new long[4];
+    try (DirectoryStream<Path> top = Files.newDirectoryStream(paths.topPath(), "*" + JsonElectionRecordPath.JSON_SUFFIX)) {
+      for (Path file : top) {
+        addFile(sum, file);
+      }
+    }
+    try (Stream<Path> ballots = paths.ballotPaths()) {
+      for (Path file : (Iterable<Path>) ballots::iterator) {
+        addFile(sum, file);
+      }
+    }
+    if (Files.isDirectory(paths.spoiledBallotDirPath())) {
+      try (DirectoryStream<Path> spoiled = Files.newDirectoryStream(paths.spoiledBallotDirPath())) {
+        for (Path file : spoiled) {
+          addFile(sum, file);
+        }
+      }
+    }
+    ByteBuffer result = ByteBuffer.allocate(32);
+    for (long part : sum) {
+      result.putLong(part);
+    }
+    return HexFormat.of().formatHex(result.array());
+  }
+
+  private static void addFile(long[] sum, Path file) throws IOException {
+    BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+    if (!attributes.isRegularFile()) {
+      return;
+    }
+    MessageDigest digest = newDigest();
+    digest.update(file.toAbsolutePath().toString().getBytes(StandardCharsets.UTF_8));
+    digest.update(ByteBuffer.allocate(16).putLong(attributes.size())
+            .putLong(attributes.lastModifiedTime().toMillis()).array());
+    ByteBuffer hash = ByteBuffer.wrap(digest.digest());
+    for (int i = 0; i < sum.length; i++) {
+      sum[i] += hash.getLong();
+    }
+  }
+
+  /** True if the snapshot exists and was written with this fingerprint(), so none of its files have changed. */
+  public boolean isCurrent(String fingerprint) {
+    if (!Files.exists(snapshotPath)) {
+      return false;
+    }
+    try (FileChannel channel = FileChannel.open(snapshotPath, StandardOpenOption.READ)) {
+      ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), 256));
+      if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+        return false;
+      }
+      boolean current = readString(header).equals(fingerprint);
+      if (current) {
+        Files.setLastModifiedTime(snapshotPath, FileTime.fromMillis(System.currentTimeMillis())); // recently used
+      }
+      return current;
+    } catch (Exception e) {
+      logger.atWarning().withCause(e).log("Failed reading snapshot header '%s'", snapshotPath);
+      return false;
+    }
+  }
+
+  public Path indexPath() {
+    return indexPath(snapshotPath);
+  }
+
+  /**
+   * Write the ballots and their index to temporary files, then move them into place,
+   * so readers never see a partial snapshot. The fingerprint is that of the record before the ballots were read.
+   */
+  public void write(Iterable<EncryptedBallot> ballots, String fingerprint) throws IOException {
+    Files.createDirectories(snapshotPath.getParent());
+    Path tmp = Files.createTempFile(snapshotPath.getParent(), "snapshot", ".tmp");
+    Path tmpIndex = Files.createTempFile(snapshotPath.getParent(), "index", ".tmp");
+    try {
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16));
+           BallotIndex.Writer indexWriter = new BallotIndex.Writer(tmpIndex, fingerprint)) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        writeString(out, fingerprint);
+        long offset = out.size(); // DataOutputStream.size() is an int, so keep our own count after the header
+
+        ByteArrayOutputStream record = new ByteArrayOutputStream(1 << 16);
+        DataOutputStream recordOut = new DataOutputStream(record);
+        for (EncryptedBallot ballot : ballots) {
+          record.reset();
+          writeBallot(recordOut, ballot);
+          indexWriter.add(ballot, offset);
+          out.writeInt(record.size());
+          record.writeTo(out);
+          offset += 4 + record.size();
+        }
+      }
+      Files.move(tmpIndex, indexPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      Files.move(tmp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tmp);
+      Files.deleteIfExists(tmpIndex);
+    }
+    evict(snapshotPath.getParent(), MAX_CACHE_BYTES, snapshotPath);
+  }
+
+  /**
+   * Delete the least recently used snapshots, with their indexes, until the rest take at most maxBytes,
+   * and the temporary files of writes that did not finish. Use maxBytes = 0 to clear the cache.
+   */
+  public static void evict(Path cacheDir, long maxBytes) {
+    evict(cacheDir, maxBytes, null);
+  }
+
+  /** As evict(cacheDir, maxBytes), but never delete keep, the snapshot just written. */
+  static void evict(Path cacheDir, long maxBytes, @Nullable Path keep) {
+    if (!Files.isDirectory(cacheDir)) {
+      return;
+    }
+    List<Path> snapshots = new ArrayList<>();
+    long total = 0;
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(cacheDir)) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        if (name.endsWith(SUFFIX)) {
+          snapshots.add(file);
+          total += Files.size(file) + sizeIfExists(indexPath(file));
+        } else if (name.endsWith(".tmp") && Files.getLastModifiedTime(file).toMillis() < System.currentTimeMillis() - STALE_TMP_MS) {
+          Files.deleteIfExists(file);
+        }
+      }
+      snapshots.sort(Comparator.comparingLong(BallotSnapshot::lastModified));
+      for (Path snapshot : snapshots) {
+        if (total <= maxBytes) {
+          break;
+        }
+        if (snapshot.equals(keep)) {
+          continue;
+        }
+        total -= Files.size(snapshot) + sizeIfExists(indexPath(snapshot));
+        Files.deleteIfExists(indexPath(snapshot));
+        Files.deleteIfExists(snapshot);
+        logger.atFine().log("evicted snapshot '%s'", snapshot);
+      }
+    } catch (IOException e) {
+      logger.atWarning().withCause(e).log("Failed evicting snapshots from '%s'", cacheDir);
+    }
+  }
+
+  private static Path indexPath(Path snapshotPath) {
+    return snapshotPath.resolveSibling(snapshotPath.getFileName().toString().replace(SUFFIX, BallotIndex.SUFFIX));
+  }
+
+  private static long sizeIfExists(Path file) throws IOException {
+    return Files.exists(file) ? Files.size(file) : 0;
+  }
+
+  private static long lastModified(Path file) {
+    try {
+      return Files.getLastModifiedTime(file).toMillis();
+    } catch (IOException e) {
+      return 0;
+    }
+  }
+
+  /** Iterate over the ballots in the snapshot. Each call to iterator() opens the file again. */
+  public Iterable<EncryptedBallot> ballots() {
+    return () -> new SnapshotIterator(null);
+  }
+
+  /**
+   * Iterate over the ballots whose records start at these offsets, as given by the BallotIndex, in increasing order.
+   * They are read through the same sliding window as ballots(), not mapped one at a time.
+   */
+  public Iterable<EncryptedBallot> ballots(long[] offsets) {
+    return () -> new SnapshotIterator(offsets);
+  }
+
+  /** Read the index written with the snapshot of this fingerprint(), or null if there is none. */
+  @Nullable
+  public BallotIndex readIndex(String fingerprint) throws IOException {
+    return BallotIndex.read(indexPath(), fingerprint);
+  }
+
+  /** Read the one ballot whose record starts at offset, as given by the BallotIndex, without mapping the file. */
+  public EncryptedBallot readBallot(long offset) throws IOException {
+    try (FileChannel channel = FileChannel.open(snapshotPath, StandardOpenOption.READ)) {
+      int len = readFully(channel, ByteBuffer.allocate(4), offset).getInt();
+      return readBallot(readFully(channel, ByteBuffer.allocate(len), offset + 4));
+    }
+  }
+
+  private ByteBuffer readFully(FileChannel channel, ByteBuffer buffer, long pos) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, pos + buffer.position()) < 0) {
+        throw new IOException("Truncated snapshot " + snapshotPath);
+      }
+    }
+    return buffer.flip();
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  // binary encoding of one ballot
+
+  static void writeBallot(DataOutputStream out, EncryptedBallot ballot) throws IOException {
+    writeString(out, ballot.getBallotId());
+    writeString(out, ballot.getBallotStyleId());
+    writeUInt256(out, ballot.getManifestHash());
+    writeUInt256(out, ballot.getCodeSeed());
+    writeUInt256(out, ballot.getCode());
+    out.writeLong(ballot.getTimestamp());
+    writeUInt256(out, ballot.getCryptoHash());
+    out.writeByte(ballot.getState() == null ? -1 : ballot.getState().ordinal());
+
+    out.writeInt(ballot.getContests().size());
+    for (EncryptedBallot.Contest contest : ballot.getContests()) {
+      writeString(out, contest.getContestId());
+      out.writeInt(contest.getSequenceOrder());
+      writeUInt256(out, contest.getContestHash());
+      writeUInt256(out, contest.getCryptoHash());
+      ConstantChaumPedersenProofKnownNonce proof = contest.getProof();
+      out.writeBoolean(proof != null);
+      if (proof != null) {
+        writeQ(out, proof.getProof().getC());
+        writeQ(out, proof.getProof().getR());
+        out.writeInt(proof.getConstant());
+      }
+
+      out.writeInt(contest.getSelections().size());
+      for (EncryptedBallot.Selection selection : contest.getSelections()) {
+        writeString(out, selection.getSelectionId());
+        out.writeInt(selection.getSequenceOrder());
+        writeUInt256(out, selection.getSelectionHash());
+        ElGamalCiphertext ciphertext = selection.getCiphertext();
+        out.writeBoolean(ciphertext != null);
+        if (ciphertext != null) {
+          writeP(out, ciphertext.getPad());
+          writeP(out, ciphertext.getData());
+        }
+        writeUInt256(out, selection.getCryptoHash());
+        out.writeBoolean(selection.isPlaceholderSelection());
+        DisjunctiveChaumPedersenProofKnownNonce dproof = selection.getProof();
+        out.writeBoolean(dproof != null);
+        if (dproof != null) {
+          writeQ(out, dproof.getProof0().getC());
+          writeQ(out, dproof.getProof0().getR());
+          writeQ(out, dproof.getProof1().getC());
+          writeQ(out, dproof.getProof1().getR());
+          writeQ(out, dproof.getC());
+        }
+      }
+    }
+  }
+
+  static EncryptedBallot readBallot(ByteBuffer in) {
+    String ballotId = readString(in);
+    String styleId = readString(in);
+    UInt256 manifestHash = readUInt256(in);
+    UInt256 codeSeed = readUInt256(in);
+    UInt256 code = readUInt256(in);
+    long timestamp = in.getLong();
+    UInt256 cryptoHash = readUInt256(in);
+    int state = in.get();
+
+    int ncontests = in.getInt();
+    List<EncryptedBallot.Contest> contests = new ArrayList<>(ncontests);
+    for (int i = 0; i < ncontests; i++) {
+      String contestId = readString(in);
+      int contestSeq = in.getInt();
+      UInt256 contestHash = readUInt256(in);
+      UInt256 contestCryptoHash = readUInt256(in);
+      ConstantChaumPedersenProofKnownNonce proof = null;
+      if (in.get() != 0) {
+        GenericChaumPedersenProof gproof = new GenericChaumPedersenProof(readQ(in), readQ(in));
+        proof = new ConstantChaumPedersenProofKnownNonce(gproof, in.getInt());
+      }
+
+      int nselections = in.getInt();
+      List<EncryptedBallot.Selection> selections = new ArrayList<>(nselections);
+      for (int j = 0; j < nselections; j++) {
+        String selectionId = readString(in);
+        int selectionSeq = in.getInt();
+        UInt256 selectionHash = readUInt256(in);
+        ElGamalCiphertext ciphertext = null;
+        if (in.get() != 0) {
+          ciphertext = new ElGamalCiphertext(readP(in), readP(in));
+        }
+        UInt256 selectionCryptoHash = readUInt256(in);
+        boolean isPlaceholder = in.get() != 0;
+        DisjunctiveChaumPedersenProofKnownNonce dproof = null;
+        if (in.get() != 0) {
+          GenericChaumPedersenProof proof0 = new GenericChaumPedersenProof(readQ(in), readQ(in));
+          GenericChaumPedersenProof proof1 = new GenericChaumPedersenProof(readQ(in), readQ(in));
+          dproof = new DisjunctiveChaumPedersenProofKnownNonce(proof0, proof1, readQ(in));
+        }
+        selections.add(new EncryptedBallot.Selection(selectionId, selectionSeq, selectionHash, ciphertext,
+                selectionCryptoHash, isPlaceholder, dproof, null));
+      }
+      contests.add(new EncryptedBallot.Contest(contestId, contestSeq, contestHash, selections, contestCryptoHash, proof));
+    }
+
+    return new EncryptedBallot(ballotId, styleId, manifestHash, codeSeed, code, contests, timestamp, cryptoHash,
+            state < 0 ? null : EncryptedBallot.BallotState.values()[state]);
+  }
+
+  static void writeString(DataOutputStream out, @Nullable String s) throws IOException {
+    if (s == null) {
+      out.writeInt(-1);
+      return;
+    }
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  @Nullable
+  static String readString(ByteBuffer in) {
+    int len = in.getInt();
+    if (len < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[len];
+    in.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  static void writeUInt256(DataOutputStream out, @Nullable UInt256 u) throws IOException {
+    out.writeBoolean(u != null);
+    if (u != null) {
+      writeFixed(out, u.getBytes(), Q_BYTES);
+    }
+  }
+
+  @Nullable
+  static UInt256 readUInt256(ByteBuffer in) {
+    if (in.get() == 0) {
+      return null;
+    }
+    byte[] bytes = new byte[Q_BYTES];
+    in.get(bytes);
+    return new UInt256(bytes);
+  }
+
+  static void writeP(DataOutputStream out, ElementModP p) throws IOException {
+    writeFixed(out, p.byteArray(), P_BYTES);
+  }
+
+  static ElementModP readP(ByteBuffer in) {
+    byte[] bytes = new byte[P_BYTES];
+    in.get(bytes);
+    ElementModP result = group.binaryToElementModP(bytes);
+    if (result == null) {
+      throw new IllegalStateException("Snapshot has an ElementModP out of range");
+    }
+    return result;
+  }
+
+  static void writeQ(DataOutputStream out, ElementModQ q) throws IOException {
+    writeFixed(out, q.byteArray(), Q_BYTES);
+  }
+
+  static ElementModQ readQ(ByteBuffer in) {
+    byte[] bytes = new byte[Q_BYTES];
+    in.get(bytes);
+    ElementModQ result = group.binaryToElementModQ(bytes);
+    if (result == null) {
+      throw new IllegalStateException("Snapshot has an ElementModQ out of range");
+    }
+    return result;
+  }
+
+  /** Write an unsigned big-endian value left padded with zeros, or with extra leading zeros removed, to width bytes. */
+  static void writeFixed(OutputStream out, byte[] value, int width) throws IOException {
+    int start = 0;
+    while (value.length - start > width && value[start] == 0) {
+      start++;
+    }
+    int len = value.length - start;
+    if (len > width) {
+      throw new IllegalArgumentException("Value has " + len + " bytes, must fit in " + width);
+    }
+    for (int i = len; i < width; i++) {
+      out.write(0);
+    }
+    out.write(value, start, len);
+  }
+
+  /**
+   * SHA-256 of the ballot's binary encoding, which covers every field of the ballot: its hashes, ciphertexts
+   * and proofs. Two ballots with the same digest verify the same way.
+   */
+  public static byte[] digest(EncryptedBallot ballot) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 14);
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      writeBallot(out, ballot);
+    } catch (IOException e) {
+      throw new IllegalStateException(e); // not thrown by a ByteArrayOutputStream
+    }
+    return sha256(bytes.toByteArray());
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static byte[] sha256(byte[] bytes) {
+    return newDigest().digest(bytes);
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Reads ballot records through a memory-mapped window that slides forward over the file.
+   * The channel is only open while mapping, a mapping stays valid after its channel is closed.
+   */
+  private class SnapshotIterator implements Iterator<EncryptedBallot> {
+    private final long size;
+    @Nullable private final long[] offsets; // read only the records at these offsets, else all of them
+    private int next;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long position;
+
+    SnapshotIterator(@Nullable long[] offsets) {
+      this.offsets = offsets;
+      try {
+        this.size = Files.size(snapshotPath);
+        ByteBuffer header = map(0, 8);
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+          throw new IllegalStateException("Not a ballot snapshot: " + snapshotPath);
+        }
+        int len = map(8, 4).getInt();
+        this.position = 12 + Math.max(len, 0);
+      } catch (IOException e) {
+        throw new IllegalStateException("Failed opening snapshot " + snapshotPath, e);
+      }
+    }
+
+    /** Return a buffer positioned at pos with at least len bytes remaining. */
+    private ByteBuffer map(long pos, int len) throws IOException {
+      if (window == null || pos < windowStart || pos + len > windowStart + window.capacity()) {
+        try (FileChannel channel = FileChannel.open(snapshotPath, StandardOpenOption.READ)) {
+          windowStart = pos;
+          window = channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(size - pos, Math.max(WINDOW, len)));
+        }
+      }
+      return window.duplicate().position((int) (pos - windowStart));
+    }
+
+    @Override
+    public boolean hasNext() {
+      return offsets == null ? position < size : next < offsets.length;
+    }
+
+    @Override
+    public EncryptedBallot next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      if (offsets != null) {
+        position = offsets[next++];
+      }
+      try {
+        int len = map(position, 4).getInt();
+        ByteBuffer record = map(position + 4, len).slice(0, len);
+        position += 4 + len;
+        return readBallot(record);
+      } catch (IOException e) {
+        throw new IllegalStateException("Failed reading snapshot " + snapshotPath, e);
+      }
+    }
+  }
+}
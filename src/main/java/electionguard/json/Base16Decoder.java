@@ -0,0 +1,91 @@
+package electionguard.json;
+
+import electionguard.core.ElementModP;
+import electionguard.core.ElementModQ;
+import electionguard.core.GroupContext;
+import electionguard.core.UInt256;
+import electionguard.core.UInt256Kt;
+
+import java.util.Arrays;
+
+import static electionguard.core.GroupCommonKt.safeBase16ToElementModP;
+import static electionguard.core.GroupCommonKt.safeBase16ToElementModQ;
+
+/**
+ * Decodes base16 strings into group elements through a per-thread, fixed width scratch buffer, instead of
+ * parsing a hex BigInteger. The group's binary conversion does the range check. Anything the fast path
+ * does not accept (bad characters, too long, out of range) falls back to safeBase16ToElementModP/Q,
+ * so results are the same as before.
+ */
+class Base16Decoder {
+  static final int P_BYTES = 512;
+  static final int Q_BYTES = 32;
+
+  private static final ThreadLocal<byte[]> pScratch = ThreadLocal.withInitial(() -> new byte[P_BYTES]);
+  private static final ThreadLocal<byte[]> qScratch = ThreadLocal.withInitial(() -> new byte[Q_BYTES]);
+
+  private static final byte[] digits = new byte[128];
+  static {
+    Arrays.fill(digits, (byte) -1);
+    for (int i = 0; i < 10; i++) {
+      digits['0' + i] = (byte) i;
+    }
+    for (int i = 0; i < 6; i++) {
+      digits['a' + i] = (byte) (10 + i);
+      digits['A' + i] = (byte) (10 + i);
+    }
+  }
+
+  static ElementModP toElementModP(GroupContext group, String hex) {
+    byte[] scratch = pScratch.get();
+    if (decode(hex, scratch)) {
+      ElementModP result = group.binaryToElementModP(scratch);
+      if (result != null) {
+        return result;
+      }
+    }
+    return safeBase16ToElementModP(group, hex);
+  }
+
+  static ElementModQ toElementModQ(GroupContext group, String hex) {
+    byte[] scratch = qScratch.get();
+    if (decode(hex, scratch)) {
+      ElementModQ result = group.binaryToElementModQ(scratch);
+      if (result != null) {
+        return result;
+      }
+    }
+    return safeBase16ToElementModQ(group, hex);
+  }
+
+  static UInt256 toUInt256(GroupContext group, String hex) {
+    return UInt256Kt.toUInt256(toElementModQ(group, hex));
+  }
+
+  /**
+   * Decode hex into the low order bytes of dest, zeroing the leading bytes. The value is unsigned big-endian,
+   * so the leading zeros do not change it. Return false if hex is empty, too long, or has a non-hex character.
+   */
+  static boolean decode(String hex, byte[] dest) {
+    int n = hex.length();
+    if (n == 0 || n > 2 * dest.length) {
+      return false;
+    }
+    Arrays.fill(dest, 0, dest.length - (n + 1) / 2, (byte) 0);
+    int pos = dest.length - 1;
+    int i = n;
+    while (i > 0) {
+      int lo = digit(hex.charAt(--i));
+      int hi = i > 0 ? digit(hex.charAt(--i)) : 0;
+      if ((lo | hi) < 0) {
+        return false;
+      }
+      dest[pos--] = (byte) ((hi << 4) | lo);
+    }
+    return true;
+  }
+
+  private static int digit(char c) {
+    return c < 128 ? digits[c] : -1;
+  }
+}
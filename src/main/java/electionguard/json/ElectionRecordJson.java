@@ -1,5 +1,6 @@
 package electionguard.json;
 
+import com.google.common.collect.Iterators;
 import electionguard.ballot.DecryptingGuardian;
 import electionguard.ballot.DecryptionResult;
 import electionguard.ballot.ElectionConfig;
@@ -21,6 +22,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.List;
+import java.util.function.Supplier;
 
 import static java.util.Collections.emptyList;
 import static java.util.Collections.emptyMap;
@@ -30,72 +32,85 @@ public class ElectionRecordJson implements ElectionRecord {
   private final JsonConsumer consumer;
   GroupContext group = KUtils.productionGroup();
 
-  private ElectionConstants constants;
-  private ElectionContextPojo.ElectionContext context;
-  private List<DecryptingGuardian> decryptingGuardians;
-  private EncryptedTally encryptedTally;
-  private List<Guardian> guardians;
-  private PlaintextTally tally;
+  // each artifact is read at most once per open record, until invalidate() is called
+  private final Lazy<ElectionConstants> constants;
+  private final Lazy<ElectionContextPojo.ElectionContext> context;
+  private final Lazy<List<DecryptingGuardian>> decryptingGuardians;
+  private final Lazy<EncryptedTally> encryptedTally;
+  private final Lazy<List<Guardian>> guardians;
+  private final Lazy<PlaintextTally> tally;
+  private final Lazy<Manifest> manifest;
+  private final Lazy<ManifestIndex> manifestIndex;
+  private final Lazy<ElectionConfig> config;
+  private final Lazy<ElectionInitialized> electionInit;
+  private final Lazy<TallyResult> tallyResult;
+  private final Lazy<DecryptionResult> decryptionResult;
+  private final List<Lazy<?>> all;
 
   public ElectionRecordJson(JsonConsumer consumer) {
     this.consumer = consumer;
+    this.constants = new Lazy<>(consumer::readConstants);
+    this.context = new Lazy<>(consumer::readContext);
+    this.decryptingGuardians = new Lazy<>(consumer::readDecryptingGuardians);
+    this.encryptedTally = new Lazy<>(consumer::readEncryptedTally);
+    this.guardians = new Lazy<>(consumer::readGuardians);
+    this.tally = new Lazy<>(consumer::readDecryptedTally);
+    this.manifest = new Lazy<>(consumer::readManifest);
+    this.manifestIndex = new Lazy<>(() -> manifest() == null ? null : new ManifestIndex(manifest()));
+    this.config = new Lazy<>(this::makeConfig);
+    this.electionInit = new Lazy<>(this::makeElectionInit);
+    this.tallyResult = new Lazy<>(this::makeTallyResult);
+    this.decryptionResult = new Lazy<>(this::makeDecryptionResult);
+    this.all = List.of(constants, context, decryptingGuardians, encryptedTally, guardians, tally, manifest,
+            manifestIndex, config, electionInit, tallyResult, decryptionResult);
+  }
+
+  /** Forget everything that has been read, so the next call reads it again from the record. */
+  public void invalidate() {
+    all.forEach(Lazy::invalidate);
   }
 
   @NotNull
   @Override
   public ElectionConstants constants() {
-    if (constants == null) {
-      constants = consumer.readConstants();
-    }
-    return constants;
+    return constants.get();
   }
 
   @Nullable
   @Override
   public UInt256 cryptoBaseHash() {
-    if (context == null) {
-      context = consumer.readContext();
-    }
-    return context.cryptoBaseHash;
+    return context.get().cryptoBaseHash;
   }
 
   @Nullable
   @Override
   public UInt256 cryptoExtendedBaseHash() {
-    if (context == null) {
-      context = consumer.readContext();
-    }
-    return context.cryptoExtendedBaseHash;
+    return context.get().cryptoExtendedBaseHash;
   }
 
   @Nullable
   @Override
   public PlaintextTally decryptedTally() {
-    if (tally == null) {
-      tally = consumer.readDecryptedTally();
-    }
-    return tally;
+    return tally.get();
   }
 
   @NotNull
   @Override
   public List<DecryptingGuardian> decryptingGuardians() {
-    if (decryptingGuardians == null) {
-      decryptingGuardians = consumer.readDecryptingGuardians();
-    }
-    return decryptingGuardians;
+    return decryptingGuardians.get();
   }
 
   @Nullable
   @Override
   public ElectionInitialized electionInit() {
-    if (context == null) {
-      context = consumer.readContext();
-    }
+    return electionInit.get();
+  }
+
+  private ElectionInitialized makeElectionInit() {
     return new ElectionInitialized(
             config(),
             jointPublicKey(),
-            context.manifestHash,
+            context.get().manifestHash,
             cryptoBaseHash(),
             cryptoExtendedBaseHash(),
             guardians(),
@@ -105,49 +120,54 @@ public class ElectionRecordJson implements ElectionRecord {
 
   @NotNull
   @Override
-  public Iterable<EncryptedBallot> encryptedBallots(@Nullable Function1<? super EncryptedBallot, Boolean> function1) {
-    return consumer.iteratorEncryptedBallots();
+  public Iterable<EncryptedBallot> encryptedBallots(@Nullable Function1<? super EncryptedBallot, Boolean> filter) {
+    if (filter == null) {
+      return consumer.iteratorEncryptedBallots();
+    }
+    if (filter instanceof BallotFilter ballotFilter) {
+      return consumer.iteratorEncryptedBallots(ballotFilter);
+    }
+    Iterable<EncryptedBallot> ballots = consumer.iteratorEncryptedBallots();
+    return () -> Iterators.filter(ballots.iterator(), filter::invoke);
   }
 
   @Nullable
   @Override
   public EncryptedTally encryptedTally() {
-    if (encryptedTally == null) {
-      encryptedTally = consumer.readEncryptedTally();
-    }
-    return encryptedTally;
+    return encryptedTally.get();
   }
 
   @NotNull
   @Override
   public List<Guardian> guardians() {
-    if (guardians == null) {
-      guardians = consumer.readGuardians();
-    }
-    return guardians;
+    return guardians.get();
   }
 
   @Nullable
   @Override
   public ElementModP jointPublicKey() {
-    if (context == null) {
-      context = consumer.readContext();
-    }
-    return context.publicKey;
+    return context.get().publicKey;
   }
 
   @NotNull
   @Override
   public Manifest manifest() {
-    return consumer.readManifest();
+    return manifest.get();
+  }
+
+  /** The number of encrypted ballot files, from the directory listing, without reading them. */
+  public int ballotFileCount() {
+    return consumer.ballotFileCount();
+  }
+
+  /** Lookup into manifest(), built with it, and shared by everything that reads this record. */
+  public ManifestIndex manifestIndex() {
+    return manifestIndex.get();
   }
 
   @Override
   public int numberOfGuardians() {
-    if (context == null) {
-      context = consumer.readContext();
-    }
-    return context.numberOfGuardians;
+    return context.get().numberOfGuardians;
   }
 
   @NotNull
@@ -158,10 +178,7 @@ public class ElectionRecordJson implements ElectionRecord {
 
   @Override
   public int quorum() {
-    if (context == null) {
-      context = consumer.readContext();
-    }
-    return context.quorum;
+    return context.get().quorum;
   }
 
   @NotNull
@@ -185,6 +202,10 @@ public class ElectionRecordJson implements ElectionRecord {
   @NotNull
   @Override
   public ElectionConfig config() {
+    return config.get();
+  }
+
+  private ElectionConfig makeConfig() {
     return new ElectionConfig(
             PROTO_VERSION,
             constants(),
@@ -198,6 +219,10 @@ public class ElectionRecordJson implements ElectionRecord {
   @Nullable
   @Override
   public TallyResult tallyResult() {
+    return tallyResult.get();
+  }
+
+  private TallyResult makeTallyResult() {
     return new TallyResult(
             group,
             electionInit(),
@@ -211,6 +236,10 @@ public class ElectionRecordJson implements ElectionRecord {
   @Nullable
   @Override
   public DecryptionResult decryptionResult() {
+    return decryptionResult.get();
+  }
+
+  private DecryptionResult makeDecryptionResult() {
     return new DecryptionResult(
             tallyResult(),
             decryptedTally(),
@@ -219,4 +248,36 @@ public class ElectionRecordJson implements ElectionRecord {
     );
   }
 
+  /**
+   * Thread-safe lazy value, which may be null. It is published in one volatile holder, so a get() racing an
+   * invalidate() returns the old value or loads it again, never a cleared one.
+   */
+  private static class Lazy<T> {
+    private record Loaded<T>(T value) {}
+
+    private final Supplier<T> supplier;
+    private volatile Loaded<T> loaded;
+
+    Lazy(Supplier<T> supplier) {
+      this.supplier = supplier;
+    }
+
+    T get() {
+      Loaded<T> current = loaded;
+      if (current == null) {
+        synchronized (this) {
+          current = loaded;
+          if (current == null) {
+            current = new Loaded<>(supplier.get());
+            loaded = current;
+          }
+        }
+      }
+      return current.value();
+    }
+
+    void invalidate() {
+      loaded = null;
+    }
+  }
 }
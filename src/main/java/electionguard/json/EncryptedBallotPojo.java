@@ -79,7 +79,13 @@ public class EncryptedBallotPojo {
   ////////////////////////////////////////////////////////////////////////////
   // deserialize
 
+  /** Reading goes straight from the JSON tokens to EncryptedBallot, see EncryptedBallotTypeAdapter. */
   public static EncryptedBallot deserialize(JsonElement jsonElem) {
+    return new EncryptedBallotTypeAdapter().fromJsonTree(jsonElem);
+  }
+
+  /** Bind to the Pojo, then translate: the slower reference path that the type adapter must agree with. */
+  static EncryptedBallot deserializeByBinding(JsonElement jsonElem) {
     Gson gson = GsonTypeAdapters.enhancedGson();
     EncryptedBallotPojo pojo = gson.fromJson(jsonElem, EncryptedBallotPojo.class);
     return translateBallot(pojo);
@@ -93,7 +99,7 @@ public class EncryptedBallotPojo {
             pojo.code_seed,
             pojo.code,
             ConvertPojos.convertList(pojo.contests, EncryptedBallotPojo::translateContest),
-            pojo.timestamp,
+            pojo.timestamp == null ? 0 : pojo.timestamp,
             pojo.crypto_hash,
             pojo.state);
   }
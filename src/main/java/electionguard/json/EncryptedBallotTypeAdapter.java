@@ -0,0 +1,346 @@
+package electionguard.json;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import electionguard.ballot.EncryptedBallot;
+import electionguard.core.ConstantChaumPedersenProofKnownNonce;
+import electionguard.core.DisjunctiveChaumPedersenProofKnownNonce;
+import electionguard.core.ElGamalCiphertext;
+import electionguard.core.ElementModP;
+import electionguard.core.ElementModQ;
+import electionguard.core.GenericChaumPedersenProof;
+import electionguard.core.GroupContext;
+import electionguard.core.UInt256;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static electionguard.viewer.KUtils.productionGroup;
+
+/**
+ * Reads an EncryptedBallot directly from the JsonReader token stream, without building a JsonElement tree
+ * or an intermediate EncryptedBallotPojo. Field names follow python's object model, see EncryptedBallotPojo.
+ * Writing still goes through EncryptedBallotPojo.
+ * readWithProofs() also keeps the commitments of the selection proofs, which EncryptedBallot leaves out,
+ * so the SelectionProofs come from the same pass over the JSON.
+ */
+class EncryptedBallotTypeAdapter extends TypeAdapter<EncryptedBallot> {
+  private static final GroupContext group = productionGroup();
+
+  @Nullable
+  private final List<ElementModP[]> commitments; // of each selection proof, in order, only in readWithProofs()
+
+  EncryptedBallotTypeAdapter() {
+    this.commitments = null;
+  }
+
+  private EncryptedBallotTypeAdapter(List<ElementModP[]> commitments) {
+    this.commitments = commitments;
+  }
+
+  /** Read a ballot and its selection proofs, with their commitments, in one pass. */
+  @Nullable
+  static JsonConsumer.BallotProofs readWithProofs(JsonReader in) throws IOException {
+    List<ElementModP[]> commitments = new ArrayList<>();
+    EncryptedBallot ballot = new EncryptedBallotTypeAdapter(commitments).read(in);
+    return ballot == null ? null : new JsonConsumer.BallotProofs(ballot, SelectionProof.of(ballot, commitments));
+  }
+
+  @Override
+  public void write(JsonWriter out, @Nullable EncryptedBallot value) throws IOException {
+    if (value == null) {
+      out.nullValue();
+      return;
+    }
+    GsonTypeAdapters.enhancedGson().toJson(EncryptedBallotPojo.serialize(value), out);
+  }
+
+  @Override
+  @Nullable
+  public EncryptedBallot read(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    String ballotId = null;
+    String styleId = null;
+    UInt256 manifestHash = null;
+    UInt256 code = null;
+    UInt256 codeSeed = null;
+    List<EncryptedBallot.Contest> contests = new ArrayList<>();
+    long timestamp = 0;
+    UInt256 cryptoHash = null;
+    EncryptedBallot.BallotState state = null;
+
+    in.beginObject();
+    while (in.hasNext()) {
+      switch (in.nextName()) {
+        case "object_id" -> ballotId = readString(in);
+        case "style_id" -> styleId = readString(in);
+        case "manifest_hash" -> manifestHash = readUInt256(in);
+        case "code" -> code = readUInt256(in);
+        case "code_seed" -> codeSeed = readUInt256(in);
+        case "contests" -> {
+          in.beginArray();
+          while (in.hasNext()) {
+            contests.add(readContest(in));
+          }
+          in.endArray();
+        }
+        case "timestamp" -> timestamp = readTimestamp(in);
+        case "crypto_hash" -> cryptoHash = readUInt256(in);
+        case "state" -> state = readBallotState(in);
+        default -> in.skipValue(); // nonce is always null
+      }
+    }
+    in.endObject();
+
+    return new EncryptedBallot(
+            ballotId,
+            styleId,
+            manifestHash,
+            codeSeed,
+            code,
+            contests,
+            timestamp,
+            cryptoHash,
+            state);
+  }
+
+  private EncryptedBallot.Contest readContest(JsonReader in) throws IOException {
+    String contestId = null;
+    int sequenceOrder = 0;
+    UInt256 descriptionHash = null;
+    List<EncryptedBallot.Selection> selections = new ArrayList<>();
+    UInt256 cryptoHash = null;
+    ConstantChaumPedersenProofKnownNonce proof = null;
+
+    in.beginObject();
+    while (in.hasNext()) {
+      switch (in.nextName()) {
+        case "object_id" -> contestId = readString(in);
+        case "sequence_order" -> sequenceOrder = in.nextInt();
+        case "description_hash" -> descriptionHash = readUInt256(in);
+        case "ballot_selections" -> {
+          in.beginArray();
+          while (in.hasNext()) {
+            selections.add(readSelection(in));
+          }
+          in.endArray();
+        }
+        case "crypto_hash" -> cryptoHash = readUInt256(in);
+        case "proof" -> proof = readConstantProof(in);
+        default -> in.skipValue(); // nonce, ciphertext_accumulation, extended_data are not used
+      }
+    }
+    in.endObject();
+
+    return new EncryptedBallot.Contest(
+            contestId,
+            sequenceOrder,
+            descriptionHash,
+            selections,
+            cryptoHash,
+            proof);
+  }
+
+  private EncryptedBallot.Selection readSelection(JsonReader in) throws IOException {
+    String selectionId = null;
+    int sequenceOrder = 0;
+    UInt256 descriptionHash = null;
+    ElGamalCiphertext ciphertext = null;
+    UInt256 cryptoHash = null;
+    boolean isPlaceholder = false;
+    DisjunctiveChaumPedersenProofKnownNonce proof = null;
+
+    in.beginObject();
+    while (in.hasNext()) {
+      switch (in.nextName()) {
+        case "object_id" -> selectionId = readString(in);
+        case "sequence_order" -> sequenceOrder = in.nextInt();
+        case "description_hash" -> descriptionHash = readUInt256(in);
+        case "ciphertext" -> ciphertext = readCiphertext(in);
+        case "crypto_hash" -> cryptoHash = readUInt256(in);
+        case "is_placeholder_selection" -> isPlaceholder = readBoolean(in);
+        case "proof" -> proof = readDisjunctiveProof(in);
+        default -> in.skipValue(); // nonce, extended_data are not used
+      }
+    }
+    in.endObject();
+
+    return new EncryptedBallot.Selection(
+            selectionId,
+            sequenceOrder,
+            descriptionHash,
+            ciphertext,
+            cryptoHash,
+            isPlaceholder,
+            proof,
+            null);
+  }
+
+  @Nullable
+  private ElGamalCiphertext readCiphertext(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    ElementModP pad = null;
+    ElementModP data = null;
+
+    in.beginObject();
+    while (in.hasNext()) {
+      switch (in.nextName()) {
+        case "pad" -> pad = readElementModP(in);
+        case "data" -> data = readElementModP(in);
+        default -> in.skipValue();
+      }
+    }
+    in.endObject();
+    return new ElGamalCiphertext(pad, data);
+  }
+
+  @Nullable
+  private ConstantChaumPedersenProofKnownNonce readConstantProof(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    ElementModQ challenge = null;
+    ElementModQ response = null;
+    int constant = 0;
+
+    in.beginObject();
+    while (in.hasNext()) {
+      switch (in.nextName()) {
+        case "challenge" -> challenge = readElementModQ(in);
+        case "response" -> response = readElementModQ(in);
+        case "constant" -> constant = in.nextInt();
+        default -> in.skipValue(); // pad, data, usage are not used
+      }
+    }
+    in.endObject();
+    return new ConstantChaumPedersenProofKnownNonce(new GenericChaumPedersenProof(challenge, response), constant);
+  }
+
+  @Nullable
+  private DisjunctiveChaumPedersenProofKnownNonce readDisjunctiveProof(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    ElementModQ zeroChallenge = null;
+    ElementModQ zeroResponse = null;
+    ElementModQ oneChallenge = null;
+    ElementModQ oneResponse = null;
+    ElementModQ challenge = null;
+    ElementModP[] commitment = new ElementModP[4];
+
+    in.beginObject();
+    while (in.hasNext()) {
+      String name = in.nextName();
+      if (commitments != null) {
+        int index = switch (name) {
+          case "proof_zero_pad" -> 0;
+          case "proof_zero_data" -> 1;
+          case "proof_one_pad" -> 2;
+          case "proof_one_data" -> 3;
+          default -> -1;
+        };
+        if (index >= 0) {
+          commitment[index] = readElementModP(in);
+          continue;
+        }
+      }
+      switch (name) {
+        case "proof_zero_challenge" -> zeroChallenge = readElementModQ(in);
+        case "proof_zero_response" -> zeroResponse = readElementModQ(in);
+        case "proof_one_challenge" -> oneChallenge = readElementModQ(in);
+        case "proof_one_response" -> oneResponse = readElementModQ(in);
+        case "challenge" -> challenge = readElementModQ(in);
+        default -> in.skipValue(); // usage is not used, nor the pads and datas outside readWithProofs()
+      }
+    }
+    in.endObject();
+    if (commitments != null) {
+      commitments.add(commitment);
+    }
+    return new DisjunctiveChaumPedersenProofKnownNonce(
+            new GenericChaumPedersenProof(zeroChallenge, zeroResponse),
+            new GenericChaumPedersenProof(oneChallenge, oneResponse),
+            challenge);
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  // primitives, same encodings as the deserializers in GsonTypeAdapters
+
+  @Nullable
+  private static String readString(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    return in.nextString();
+  }
+
+  @Nullable
+  static ElementModP readElementModP(JsonReader in) throws IOException {
+    String content = readString(in);
+    return content == null ? null : Base16Decoder.toElementModP(group, content);
+  }
+
+  @Nullable
+  static ElementModQ readElementModQ(JsonReader in) throws IOException {
+    String content = readString(in);
+    return content == null ? null : Base16Decoder.toElementModQ(group, content);
+  }
+
+  @Nullable
+  static UInt256 readUInt256(JsonReader in) throws IOException {
+    String content = readString(in);
+    return content == null ? null : Base16Decoder.toUInt256(group, content);
+  }
+
+  /** The timestamp may be null in older records; EncryptedBallot needs a value, so that is read as 0. */
+  private static long readTimestamp(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return 0;
+    }
+    return in.nextLong();
+  }
+
+  private static boolean readBoolean(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.BOOLEAN) {
+      return in.nextBoolean();
+    }
+    String content = in.nextString();
+    switch (content) {
+      case "00": return false;
+      case "false": return false;
+      case "01": return true;
+      case "true": return true;
+    }
+    throw new JsonParseException("Unknown boolean encoding " + content);
+  }
+
+  @Nullable
+  private static EncryptedBallot.BallotState readBallotState(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    int content = in.nextInt();
+    switch (content) {
+      case 1: return EncryptedBallot.BallotState.CAST;
+      case 2: return EncryptedBallot.BallotState.SPOILED;
+      case 3: return EncryptedBallot.BallotState.UNKNOWN;
+    }
+    throw new JsonParseException("Unknown BallotState encoding " + content);
+  }
+}
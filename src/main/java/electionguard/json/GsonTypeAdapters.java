@@ -26,9 +26,6 @@ import electionguard.core.UInt256;
 import java.lang.reflect.Type;
 import java.math.BigInteger;
 
-import static electionguard.core.GroupCommonKt.safeBase16ToElementModP;
-import static electionguard.core.GroupCommonKt.safeBase16ToElementModQ;
-import static electionguard.core.UInt256Kt.toUInt256;
 import static electionguard.viewer.KUtils.productionGroup;
 
 /**
@@ -41,8 +38,14 @@ import static electionguard.viewer.KUtils.productionGroup;
  */
 class GsonTypeAdapters {
   private static final GroupContext group = productionGroup();
+  private static final Gson enhancedGson = createEnhancedGson();
 
+  /** Gson is immutable and thread safe, so all readers and writers share one instance. */
   static Gson enhancedGson() {
+    return enhancedGson;
+  }
+
+  static Gson createEnhancedGson() {
     return new GsonBuilder().setPrettyPrinting().serializeNulls()
             .registerTypeAdapter(BallotState.class, new BallotBoxStateSerializer())
             .registerTypeAdapter(BallotState.class, new BallotBoxStateDeserializer())
@@ -66,6 +69,7 @@ class GsonTypeAdapters {
             .registerTypeAdapter(Guardian.class, new GuardianRecordSerializer())
             .registerTypeAdapter(Guardian.class, new GuardianRecordDeserializer())
             .registerTypeAdapter(UInt256.class, new UInt256Deserializer())
+            .registerTypeAdapter(UInt256.class, new UInt256Serializer())
             .registerTypeAdapter(LagrangeCoefficientsPojo.class, new LagrangeCoefficientsSerializer())
             .registerTypeAdapter(LagrangeCoefficientsPojo.class, new LagrangeCoefficientsDeserializer())
             .registerTypeAdapter(Manifest.class, new ManifestDeserializer())
@@ -73,8 +77,7 @@ class GsonTypeAdapters {
             .registerTypeAdapter(PlaintextBallot.class, new PlaintextBallotDeserializer())
             .registerTypeAdapter(PlaintextTally.class, new PlaintextTallySerializer())
             .registerTypeAdapter(PlaintextTally.class, new PlaintextTallyDeserializer())
-            .registerTypeAdapter(EncryptedBallot.class, new CiphertextBallotSerializer())
-            .registerTypeAdapter(EncryptedBallot.class, new CiphertextBallotDeserializer())
+            .registerTypeAdapter(EncryptedBallot.class, new EncryptedBallotTypeAdapter())
             .create();
   }
 
@@ -115,7 +118,14 @@ class GsonTypeAdapters {
     public UInt256 deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context)
             throws JsonParseException {
       String content = json.getAsJsonPrimitive().getAsString();
-      return toUInt256(safeBase16ToElementModQ(group, content));
+      return Base16Decoder.toUInt256(group, content);
+    }
+  }
+
+  private static class UInt256Serializer implements JsonSerializer<UInt256> {
+    @Override
+    public JsonElement serialize(UInt256 src, Type typeOfSrc, JsonSerializationContext context) {
+      return new JsonPrimitive(src.cryptoHashString());
     }
   }
 
@@ -124,7 +134,7 @@ class GsonTypeAdapters {
     public ElementModQ deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context)
             throws JsonParseException {
       String content = json.getAsJsonPrimitive().getAsString();
-      return safeBase16ToElementModQ(group, content);
+      return Base16Decoder.toElementModQ(group, content);
     }
   }
 
@@ -140,7 +150,7 @@ class GsonTypeAdapters {
     public ElementModP deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context)
             throws JsonParseException {
       String content = json.getAsJsonPrimitive().getAsString();
-      return safeBase16ToElementModP(group, content);
+      return Base16Decoder.toElementModP(group, content);
     }
   }
 
@@ -159,21 +169,6 @@ class GsonTypeAdapters {
     }
   }
 
-  private static class CiphertextBallotSerializer implements JsonSerializer<EncryptedBallot> {
-    @Override
-    public JsonElement serialize(EncryptedBallot src, Type typeOfSrc, JsonSerializationContext context) {
-      return EncryptedBallotPojo.serialize(src);
-    }
-  }
-
-  private static class CiphertextBallotDeserializer implements JsonDeserializer<EncryptedBallot> {
-    @Override
-    public EncryptedBallot deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context)
-            throws JsonParseException {
-      return EncryptedBallotPojo.deserialize(json);
-    }
-  }
-
   private static class PlaintextBallotSerializer implements JsonSerializer<PlaintextBallot> {
     @Override
     public JsonElement serialize(PlaintextBallot src, Type typeOfSrc, JsonSerializationContext context) {
@@ -2,6 +2,7 @@ package electionguard.json;
 
 import com.google.common.flogger.FluentLogger;
 import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
 import electionguard.ballot.DecryptingGuardian;
 import electionguard.ballot.ElectionConstants;
 import electionguard.ballot.EncryptedBallot;
@@ -13,30 +14,82 @@ import electionguard.core.ElementModQ;
 import electionguard.publish.ElectionRecord;
 
 import javax.annotation.Nullable;
-import java.io.File;
-import java.io.FileInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Formatter;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-/** Reads published election records in JSON. */
-public class JsonConsumer {
+/** Reads published election records in JSON. Close it to release a zip archive it reads from. */
+public class JsonConsumer implements Closeable {
   private static final FluentLogger logger = FluentLogger.forEnclosingClass();
   private static final Gson enhancedGson = GsonTypeAdapters.enhancedGson();
 
+  private final String topDir;
   private final JsonElectionRecordPath paths;
+  @Nullable
+  private final BallotSnapshot snapshot;
+  @Nullable
+  private BallotIndex index;
+  private boolean snapshotChecked; // the snapshot was found current, or written, since the last refreshSnapshot()
+  private String fingerprint; // of the record, when the snapshot was last checked
+  @Nullable
+  private volatile LongConsumer readListener;
 
   public JsonConsumer(String topDir) throws IOException {
-    paths = new JsonElectionRecordPath(Path.of(topDir));
+    this(topDir, null);
+  }
+
+  /**
+   * @param topDir the election record directory, or a .zip of it, which is read without extracting it.
+   * @param snapshotDir if not null, keep a binary snapshot of the encrypted ballots in this directory,
+   *                    and read the ballots from it while it is current. Not used for a zip.
+   */
+  public JsonConsumer(String topDir, @Nullable Path snapshotDir) throws IOException {
+    this.topDir = topDir;
+    paths = JsonElectionRecordPath.of(topDir);
+    snapshot = snapshotDir == null || paths.isArchive() ? null : new BallotSnapshot(snapshotDir, paths);
+  }
+
+  /** Release the zip archive the record is read from, if any. A record read from the zip can't be read after that. */
+  @Override
+  public void close() throws IOException {
+    paths.close();
+  }
+
+  /**
+   * Called with the size in bytes of each ballot or spoiled ballot file, after it has been read.
+   * The listener may throw CancellationException to abandon the read.
+   */
+  public void setReadListener(@Nullable LongConsumer listener) {
+    this.readListener = listener;
+  }
+
+  public int ballotFileCount() {
+    try (Stream<Path> ballots = paths.ballotPaths()) {
+      return (int) ballots.count();
+    }
   }
 
   public boolean isValidElectionRecord(Formatter error) {
@@ -52,6 +105,9 @@ public class JsonConsumer {
   }
 
   public String location() {
+    if (paths.isArchive()) {
+      return Path.of(topDir).toAbsolutePath() + "!" + paths.topPath();
+    }
     return paths.topPath().toAbsolutePath().toString();
   }
 
@@ -62,7 +118,7 @@ public class JsonConsumer {
     if (Files.exists(paths.encryptedTallyPath())) {
       return ElectionRecord.Stage.TALLIED;
     }
-    if (paths.ballotFiles().length > 0) {
+    if (paths.hasBallotFiles()) {
       return ElectionRecord.Stage.ENCRYPTED;
     }
     if (Files.exists(paths.contextPath())) {
@@ -82,7 +138,7 @@ public class JsonConsumer {
   @Nullable
   public Manifest readManifest() {
     if (Files.exists(paths.manifestPath())) {
-      try (InputStream is = new FileInputStream(paths.manifestPath().toString())) {
+      try (InputStream is = Files.newInputStream(paths.manifestPath())) {
         Reader reader = new InputStreamReader(is);
         return enhancedGson.fromJson(reader, Manifest.class);
       } catch (Exception e) {
@@ -96,7 +152,7 @@ public class JsonConsumer {
   @Nullable
   public ElectionConstants readConstants() {
     if (Files.exists(paths.constantsPath())) {
-      try (InputStream is = new FileInputStream(paths.constantsPath().toString())) {
+      try (InputStream is = Files.newInputStream(paths.constantsPath())) {
         Reader reader = new InputStreamReader(is);
         return enhancedGson.fromJson(reader, ElectionConstants.class);
       } catch (Exception e) {
@@ -110,7 +166,7 @@ public class JsonConsumer {
   @Nullable
   public ElectionContextPojo.ElectionContext readContext() {
     if (Files.exists(paths.contextPath())) {
-      try (InputStream is = new FileInputStream(paths.contextPath().toString())) {
+      try (InputStream is = Files.newInputStream(paths.contextPath())) {
         Reader reader = new InputStreamReader(is);
         return enhancedGson.fromJson(reader, ElectionContextPojo.ElectionContext.class);
       } catch (Exception e) {
@@ -124,7 +180,7 @@ public class JsonConsumer {
   @Nullable
   public PlaintextTally readDecryptedTally() {
     if (Files.exists(paths.tallyPath())) {
-      try (InputStream is = new FileInputStream(paths.tallyPath().toString())) {
+      try (InputStream is = Files.newInputStream(paths.tallyPath())) {
         Reader reader = new InputStreamReader(is);
         return enhancedGson.fromJson(reader, PlaintextTally.class);
       } catch (Exception e) {
@@ -138,7 +194,7 @@ public class JsonConsumer {
   @Nullable
   public EncryptedTally readEncryptedTally() {
     if (Files.exists(paths.encryptedTallyPath())) {
-      try (InputStream is = new FileInputStream(paths.encryptedTallyPath().toString())) {
+      try (InputStream is = Files.newInputStream(paths.encryptedTallyPath())) {
         Reader reader = new InputStreamReader(is);
         return enhancedGson.fromJson(reader, EncryptedTally.class);
       } catch (Exception e) {
@@ -151,8 +207,8 @@ public class JsonConsumer {
 
   public List<EncryptionDevicePojo.EncryptionDevice> readDevices() {
     List<EncryptionDevicePojo.EncryptionDevice> result = new ArrayList<>();
-    for (File file : paths.deviceFiles()) {
-      EncryptionDevicePojo.EncryptionDevice fromPython = readDevice(file.getAbsolutePath());
+    for (Path file : paths.devicePaths()) {
+      EncryptionDevicePojo.EncryptionDevice fromPython = readDevice(file);
       if (fromPython != null) {
         result.add(fromPython);
       }
@@ -161,7 +217,11 @@ public class JsonConsumer {
   }
 
   public EncryptionDevicePojo.EncryptionDevice readDevice(String pathname) {
-    try (InputStream is = new FileInputStream(pathname)) {
+    return readDevice(Path.of(pathname));
+  }
+
+  private EncryptionDevicePojo.EncryptionDevice readDevice(Path pathname) {
+    try (InputStream is = Files.newInputStream(pathname)) {
       Reader reader = new InputStreamReader(is);
       return enhancedGson.fromJson(reader, EncryptionDevicePojo.EncryptionDevice.class);
     } catch (Exception e) {
@@ -170,19 +230,214 @@ public class JsonConsumer {
     }
   }
 
+  /**
+   * Each iteration lists the ballot directory and reads one ballot file at a time.
+   * When snapshots are enabled, the ballots come from the snapshot, which is first rewritten if stale.
+   */
   public Iterable<EncryptedBallot> iteratorEncryptedBallots() {
-    List<EncryptedBallot> result = new ArrayList<>();
-    for (File file : paths.ballotFiles()) {
-      EncryptedBallot fromPython = readEncryptedBallot(file.getAbsolutePath());
-      if (fromPython != null) {
-        result.add(fromPython);
+    if (snapshot != null && updateSnapshot()) {
+      return snapshot.ballots();
+    }
+    return jsonBallots();
+  }
+
+  /**
+   * The ballots that pass the filter. Ballots that don't match are rejected from the BallotIndex,
+   * or else from the top level fields of their JSON file, without decoding their contests.
+   * The index is only used if the snapshot is already current: a stale one is not rewritten for a filtered read.
+   */
+  public Iterable<EncryptedBallot> iteratorEncryptedBallots(BallotFilter filter) {
+    BallotIndex ballotIndex = currentBallotIndex();
+    if (ballotIndex != null) {
+      long[] offsets = ballotIndex.entries().stream()
+              .filter(filter::accepts)
+              .mapToLong(BallotIndex.Entry::offset)
+              .sorted()
+              .toArray();
+      return snapshot.ballots(offsets);
+    }
+    return () -> new FileIterator<>(paths.ballotPaths(),
+            pathname -> acceptsHeader(pathname, filter) ? readEncryptedBallot(pathname) : null);
+  }
+
+  @Nullable
+  private EncryptedBallot readSnapshotBallot(BallotIndex.Entry entry) {
+    try {
+      return snapshot.readBallot(entry.offset());
+    } catch (IOException e) {
+      logger.atWarning().withCause(e).log("Failed reading ballot '%s' from snapshot", entry.ballotId());
+      return null;
+    }
+  }
+
+  private static boolean acceptsHeader(Path pathname, BallotFilter filter) {
+    try (JsonReader reader = new JsonReader(new InputStreamReader(Files.newInputStream(pathname)))) {
+      return filter.acceptsHeader(reader);
+    } catch (Exception e) {
+      logger.atSevere().withCause(e).log("Failed reading ballot header '%s'", pathname);
+      return false;
+    }
+  }
+
+  private Iterable<EncryptedBallot> jsonBallots() {
+    return () -> new FileIterator<>(paths.ballotPaths(), JsonConsumer::readEncryptedBallot);
+  }
+
+  /** All the ballot paths at once, only for the parallel readers, which need a list to split. */
+  private List<Path> ballotPathList() {
+    try (Stream<Path> ballots = paths.ballotPaths()) {
+      return ballots.toList();
+    }
+  }
+
+  /**
+   * Make sure the snapshot is current, writing it from the JSON if needed. Return false if that fails.
+   * Checking lists every ballot file, so it is done once, and then trusted until refreshSnapshot().
+   */
+  private synchronized boolean updateSnapshot() {
+    if (checkSnapshot()) {
+      return true;
+    }
+    if (fingerprint == null) {
+      return false;
+    }
+    index = null;
+    try {
+      snapshot.write(jsonBallots(), fingerprint);
+      snapshotChecked = true;
+      return true;
+    } catch (CancellationException e) {
+      throw e;
+    } catch (Exception e) {
+      logger.atWarning().withCause(e).log("Failed writing snapshot '%s'", snapshot.snapshotPath());
+      return false;
+    }
+  }
+
+  /**
+   * Check the snapshot against the record again on its next use, and rewrite it if the record has changed.
+   * Until then, ballots added to the record are found from their JSON files, and not in the ballot index.
+   */
+  public synchronized void refreshSnapshot() {
+    snapshotChecked = false;
+    index = null;
+  }
+
+  /**
+   * The index of the ballots in the snapshot, building the snapshot if needed.
+   * Null if snapshots are not enabled or could not be written.
+   */
+  @Nullable
+  public synchronized BallotIndex ballotIndex() {
+    if (snapshot == null || !updateSnapshot()) {
+      return null;
+    }
+    return readBallotIndex();
+  }
+
+  /** The index of the ballots in the snapshot if it is current, else null, without writing the snapshot. */
+  @Nullable
+  private synchronized BallotIndex currentBallotIndex() {
+    if (snapshot == null || !checkSnapshot()) {
+      return null;
+    }
+    return readBallotIndex();
+  }
+
+  /** True if the snapshot was checked, or is current now. Leaves fingerprint null if the record can't be listed. */
+  private boolean checkSnapshot() {
+    if (snapshotChecked) {
+      return true;
+    }
+    try {
+      fingerprint = snapshot.fingerprint();
+    } catch (IOException | UncheckedIOException e) {
+      logger.atWarning().withCause(e).log("Failed listing the record files of snapshot '%s'", snapshot.snapshotPath());
+      fingerprint = null;
+      return false;
+    }
+    snapshotChecked = snapshot.isCurrent(fingerprint) && Files.exists(snapshot.indexPath());
+    return snapshotChecked;
+  }
+
+  @Nullable
+  private BallotIndex readBallotIndex() {
+    if (index == null) {
+      try {
+        index = snapshot.readIndex(fingerprint);
+      } catch (IOException e) {
+        logger.atWarning().withCause(e).log("Failed reading ballot index '%s'", snapshot.indexPath());
       }
     }
-    return result;
+    return index;
+  }
+
+  /**
+   * Find a single ballot by its id, through the ballot index if it has the ballot, else from its JSON file,
+   * so ballots added since the snapshot was checked are still found.
+   */
+  @Nullable
+  public EncryptedBallot findEncryptedBallot(String ballotId) {
+    BallotIndex ballotIndex = ballotIndex();
+    BallotIndex.Entry entry = ballotIndex == null ? null : ballotIndex.find(ballotId);
+    if (entry != null) {
+      EncryptedBallot ballot = readSnapshotBallot(entry);
+      if (ballot != null) {
+        return ballot;
+      }
+    }
+    Path ballotPath = paths.ballotPath(ballotId);
+    return Files.exists(ballotPath) ? readEncryptedBallot(ballotPath) : null;
+  }
+
+  /** Read all ballots using all available processors, in the order of the ballot directory listing. */
+  public List<EncryptedBallot> readEncryptedBallots() throws InterruptedException {
+    return readEncryptedBallots(Runtime.getRuntime().availableProcessors());
+  }
+
+  /** Read all ballots using nthreads, in the order of the ballot directory listing. */
+  public List<EncryptedBallot> readEncryptedBallots(int nthreads) throws InterruptedException {
+    List<Path> ballotPaths = ballotPathList(); // a list splits evenly, a directory stream hardly splits at all
+    return runInPool(nthreads, () -> ballotPaths.parallelStream()
+            .map(JsonConsumer::readEncryptedBallot)
+            .filter(Objects::nonNull)
+            .toList());
+  }
+
+  /**
+   * Read all ballots using nthreads, handing each one to the handler as soon as it is parsed, in no particular order.
+   * The handler is called from multiple threads, and must be thread safe.
+   */
+  public void readEncryptedBallots(int nthreads, java.util.function.Consumer<EncryptedBallot> handler)
+          throws InterruptedException {
+    List<Path> ballotPaths = ballotPathList();
+    runInPool(nthreads, () -> {
+      ballotPaths.parallelStream().unordered()
+              .map(JsonConsumer::readEncryptedBallot)
+              .filter(Objects::nonNull)
+              .forEach(handler);
+      return null;
+    });
+  }
+
+  private static <T> T runInPool(int nthreads, Callable<T> task) throws InterruptedException {
+    ForkJoinPool pool = new ForkJoinPool(Math.max(1, nthreads));
+    try {
+      return pool.submit(task).get();
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Failed reading ballots", e.getCause());
+    } finally {
+      pool.shutdown();
+    }
   }
 
   public static EncryptedBallot readEncryptedBallot(String pathname) {
-    try (InputStream is = new FileInputStream(pathname)) {
+    return readEncryptedBallot(Path.of(pathname));
+  }
+
+  /** Read a ballot from a file in any FileSystem, such as a zip. */
+  public static EncryptedBallot readEncryptedBallot(Path pathname) {
+    try (InputStream is = Files.newInputStream(pathname)) {
       Reader reader = new InputStreamReader(is);
       return enhancedGson.fromJson(reader, EncryptedBallot.class);
     } catch (Exception e) {
@@ -191,8 +446,54 @@ public class JsonConsumer {
     }
   }
 
+  /** Parse a ballot from the bytes of its JSON file, such as an archive entry. */
+  static EncryptedBallot readEncryptedBallot(byte[] json, String name) {
+    try (Reader reader = new InputStreamReader(new ByteArrayInputStream(json), StandardCharsets.UTF_8)) {
+      return enhancedGson.fromJson(reader, EncryptedBallot.class);
+    } catch (Exception e) {
+      logger.atSevere().withCause(e).log("Failed readSubmittedBallot entry '%s'", name);
+      return null;
+    }
+  }
+
+  /** Parse the JSON of an encrypted tally, from an archive entry of that name. Null if it fails. */
+  @Nullable
+  static EncryptedTally readEncryptedTally(byte[] json, String name) {
+    try (Reader reader = new InputStreamReader(new ByteArrayInputStream(json), StandardCharsets.UTF_8)) {
+      return enhancedGson.fromJson(reader, EncryptedTally.class);
+    } catch (Exception e) {
+      logger.atSevere().withCause(e).log("Failed readEncryptedTally entry '%s'", name);
+      return null;
+    }
+  }
+
+  /** A ballot, and its selection proofs with their commitments, from one parse of its JSON file. */
+  public record BallotProofs(EncryptedBallot ballot, List<SelectionProof> proofs) {}
+
+  /** Each iteration lists the ballot directory, and parses each ballot file once for the ballot and its proofs. */
+  public Iterable<BallotProofs> iteratorBallotProofs() {
+    return () -> new FileIterator<>(paths.ballotPaths(), JsonConsumer::readBallotProofs);
+  }
+
+  /** The ballot of this id with its selection proofs, read from its JSON file. Null if not found. */
+  @Nullable
+  public BallotProofs readBallotProofs(String ballotId) {
+    Path ballotPath = paths.ballotPath(ballotId);
+    return Files.exists(ballotPath) ? readBallotProofs(ballotPath) : null;
+  }
+
+  @Nullable
+  private static BallotProofs readBallotProofs(Path pathname) {
+    try (JsonReader reader = new JsonReader(new InputStreamReader(Files.newInputStream(pathname)))) {
+      return EncryptedBallotTypeAdapter.readWithProofs(reader);
+    } catch (Exception e) {
+      logger.atSevere().withCause(e).log("Failed readBallotProofs file '%s'", pathname);
+      return null;
+    }
+  }
+
   public List<DecryptingGuardian> readDecryptingGuardians() {
-    if (!paths.coefficientsPath().toFile().exists()) {
+    if (!Files.exists(paths.coefficientsPath())) {
       return new ArrayList<>();
     }
     // make a map of the Guardians
@@ -201,7 +502,7 @@ public class JsonConsumer {
 
     // read in the coefficients file
     LagrangeCoefficientsPojo coeffPojo = null;
-    try (InputStream is = new FileInputStream(paths.coefficientsPath().toString())) {
+    try (InputStream is = Files.newInputStream(paths.coefficientsPath())) {
       Reader reader = new InputStreamReader(is);
       coeffPojo = enhancedGson.fromJson(reader, LagrangeCoefficientsPojo.class);
     } catch (Exception e) {
@@ -221,18 +522,15 @@ public class JsonConsumer {
 
   // Decrypted, spoiled ballots
   public Iterable<PlaintextTally> iteratorSpoiledBallotTallies() {
-    List<PlaintextTally> result = new ArrayList<>();
-    for (File file : paths.spoiledBallotFiles()) {
-        PlaintextTally fromPython = readPlaintextTally(file.getAbsolutePath());
-        if (fromPython != null) {
-          result.add(fromPython);
-        }
-    }
-    return result;
+    return () -> new FileIterator<>(paths.spoiledBallotPaths().stream(), JsonConsumer::readPlaintextTally);
   }
 
   public static PlaintextTally readPlaintextTally(String pathname) {
-    try (InputStream is = new FileInputStream(pathname)) {
+    return readPlaintextTally(Path.of(pathname));
+  }
+
+  public static PlaintextTally readPlaintextTally(Path pathname) {
+    try (InputStream is = Files.newInputStream(pathname)) {
       Reader reader = new InputStreamReader(is);
       return enhancedGson.fromJson(reader, PlaintextTally.class);
     } catch (Exception e) {
@@ -243,8 +541,8 @@ public class JsonConsumer {
 
   public List<Guardian> readGuardians() {
     List<Guardian> result = new ArrayList<>();
-    for (File file : paths.guardianFiles()) {
-      Guardian guardian = readGuardian(file.getAbsolutePath());
+    for (Path file : paths.guardianPaths()) {
+      Guardian guardian = readGuardian(file);
       if (guardian != null) {
         result.add(guardian);
       }
@@ -253,7 +551,11 @@ public class JsonConsumer {
   }
 
   public static Guardian readGuardian(String pathname) {
-    try (InputStream is = new FileInputStream(pathname)) {
+    return readGuardian(Path.of(pathname));
+  }
+
+  public static Guardian readGuardian(Path pathname) {
+    try (InputStream is = Files.newInputStream(pathname)) {
       Reader reader = new InputStreamReader(is);
       return enhancedGson.fromJson(reader, Guardian.class);
     } catch (Exception e) {
@@ -261,4 +563,61 @@ public class JsonConsumer {
     }
     return null;
   }
+
+  private static long size(Path file) {
+    try {
+      return Files.size(file);
+    } catch (IOException e) {
+      return 0;
+    }
+  }
+
+  /**
+   * Reads the files lazily as they are listed, holding at most one parsed object ahead of the caller.
+   * Files that fail to parse are logged by the reader and skipped. The listing is closed when it is used up or
+   * the read is cancelled; an iteration that is just abandoned part way leaves that to the garbage collector.
+   */
+  private class FileIterator<T> implements Iterator<T> {
+    private final Stream<Path> listing;
+    private final Iterator<Path> files;
+    private final Function<Path, T> reader;
+    private T next;
+
+    FileIterator(Stream<Path> listing, Function<Path, T> reader) {
+      this.listing = listing;
+      this.files = listing.iterator();
+      this.reader = reader;
+    }
+
+    @Override
+    public boolean hasNext() {
+      try {
+        while (next == null && files.hasNext()) {
+          Path file = files.next();
+          next = reader.apply(file);
+          LongConsumer listener = readListener;
+          if (listener != null) {
+            listener.accept(size(file));
+          }
+        }
+      } catch (RuntimeException e) {
+        listing.close(); // cancelled by the listener, or the listing failed
+        throw e;
+      }
+      if (next == null) {
+        listing.close();
+      }
+      return next != null;
+    }
+
+    @Override
+    public T next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      T result = next;
+      next = null;
+      return result;
+    }
+  }
 }
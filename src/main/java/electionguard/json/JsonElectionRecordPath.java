@@ -1,11 +1,24 @@
 package electionguard.json;
 
-import java.io.File;
+import javax.annotation.Nullable;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-public class JsonElectionRecordPath {
+public class JsonElectionRecordPath implements Closeable {
   static final String JSON_SUFFIX = ".json";
 
   static final String DEVICES_DIR = "encryption_devices";
@@ -29,12 +42,27 @@ public class JsonElectionRecordPath {
 
   static final String AVAILABLE_GUARDIAN_PREFIX = "available_guardian_";
 
+  // an open zip archive, shared by every record read from it, and closed when the last of them is closed
+  private static class OpenZip {
+    final FileSystem fs;
+    int references;
+
+    OpenZip(FileSystem fs) {
+      this.fs = fs;
+    }
+  }
+
+  // guarded by itself
+  private static final Map<Path, OpenZip> zipFileSystems = new HashMap<>();
+
   final String topdir;
   final Path electionRecordDir;
   final Path devicesDirPath;
   final Path ballotsDirPath;
   final Path spoiledBallotDirPath;
   final Path guardianDirPath;
+  @Nullable
+  private Path zip; // the zip archive this holds open, until close()
 
   public JsonElectionRecordPath(Path electionRecordDir) throws IOException {
     this.topdir = electionRecordDir.toAbsolutePath().toString();
@@ -47,6 +75,83 @@ public class JsonElectionRecordPath {
     // this.availableGuardianDirPath = publishDirectory.resolve(AVAILABLE_GUARDIANS_DIR);
   }
 
+  /**
+   * The paths of the record at location, which is a directory or a .zip file. A zip is opened as a FileSystem
+   * and read in place, without extracting it. The record is at the root of the zip, or in its only
+   * top level directory. The zip stays open until close() has been called on every record opened from it.
+   */
+  public static JsonElectionRecordPath of(String location) throws IOException {
+    Path path = Path.of(location);
+    if (!isZip(path)) {
+      return new JsonElectionRecordPath(path);
+    }
+    Path zip = path.toAbsolutePath().normalize();
+    FileSystem fs = openZip(zip);
+    try {
+      Path root = fs.getPath("/");
+      if (!Files.exists(root.resolve(MANIFEST_FILE_NAME))) {
+        try (Stream<Path> top = Files.list(root)) {
+          List<Path> dirs = top.filter(Files::isDirectory).toList();
+          if (dirs.size() == 1) {
+            root = dirs.get(0);
+          }
+        }
+      }
+      JsonElectionRecordPath result = new JsonElectionRecordPath(root);
+      result.zip = zip;
+      return result;
+    } catch (IOException | RuntimeException e) {
+      closeZip(zip);
+      throw e;
+    }
+  }
+
+  private static FileSystem openZip(Path zip) throws IOException {
+    synchronized (zipFileSystems) {
+      OpenZip open = zipFileSystems.get(zip);
+      if (open == null) {
+        open = new OpenZip(FileSystems.newFileSystem(zip));
+        zipFileSystems.put(zip, open);
+      }
+      open.references++;
+      return open.fs;
+    }
+  }
+
+  private static void closeZip(Path zip) throws IOException {
+    synchronized (zipFileSystems) {
+      OpenZip open = zipFileSystems.get(zip);
+      if (open != null && --open.references == 0) {
+        zipFileSystems.remove(zip);
+        open.fs.close();
+      }
+    }
+  }
+
+  /** Release the zip archive the record is read from, if any. Its paths can't be read after that. */
+  @Override
+  public void close() throws IOException {
+    Path released;
+    synchronized (this) {
+      released = zip;
+      zip = null;
+    }
+    if (released != null) {
+      closeZip(released);
+    }
+  }
+
+  /** True if the path is a .zip file. */
+  public static boolean isZip(Path path) {
+    return path.getFileName() != null && path.getFileName().toString().toLowerCase().endsWith(".zip")
+            && Files.isRegularFile(path);
+  }
+
+  /** True if the record is read from an archive, rather than from a directory. */
+  public boolean isArchive() {
+    return electionRecordDir.getFileSystem() != FileSystems.getDefault();
+  }
+
   public Path manifestPath() {
     return electionRecordDir.resolve(MANIFEST_FILE_NAME).toAbsolutePath();
   }
@@ -75,15 +180,35 @@ public class JsonElectionRecordPath {
     return electionRecordDir.resolve(ENCRYPTED_TALLY_FILE_NAME).toAbsolutePath();
   }
 
+  public Path ballotsDirPath() {
+    return ballotsDirPath.toAbsolutePath();
+  }
+
+  public Path spoiledBallotDirPath() {
+    return spoiledBallotDirPath.toAbsolutePath();
+  }
+
+  /** True if the file name is that of an encrypted ballot file. */
+  public static boolean isBallotFile(Path path) {
+    return isBallotFileName(path.getFileName().toString());
+  }
+
+  static boolean isBallotFileName(String name) {
+    return name.startsWith(SUBMITTED_BALLOT_PREFIX) && name.endsWith(JSON_SUFFIX);
+  }
+
+  /** True if the file name is that of a decrypted spoiled ballot file. */
+  public static boolean isSpoiledBallotFile(Path path) {
+    String name = path.getFileName().toString();
+    return name.startsWith(SPOILED_BALLOT_PREFIX) && name.endsWith(JSON_SUFFIX);
+  }
+
   public Path devicePath(String id) {
     return devicesDirPath.resolve(DEVICE_PREFIX + id + JSON_SUFFIX);
   }
 
-  public File[] deviceFiles() {
-    if (!Files.exists(devicesDirPath) || !Files.isDirectory(devicesDirPath)) {
-      return new File[0];
-    }
-    return devicesDirPath.toFile().listFiles();
+  public List<Path> devicePaths() {
+    return list(devicesDirPath);
   }
 
   public Path guardianRecordsPath(String id) {
@@ -91,23 +216,104 @@ public class JsonElectionRecordPath {
     return guardianDirPath.resolve(fileName);
   }
 
-  public File[] guardianFiles() {
-    if (!Files.exists(guardianDirPath) || !Files.isDirectory(guardianDirPath)) {
-      return new File[0];
-    }
-    return guardianDirPath.toFile().listFiles();
+  public List<Path> guardianPaths() {
+    return list(guardianDirPath);
   }
 
+  /**
+   * The path of a ballot's file. In a record with hashed subdirectories, that is
+   * submitted_ballots/xx/submitted_ballot_id.json, where xx is hashedSubdir(id), if that directory exists.
+   */
   public Path ballotPath(String id) {
     String fileName = SUBMITTED_BALLOT_PREFIX + id + JSON_SUFFIX;
-    return ballotsDirPath.resolve(fileName);
+    Path subdir = ballotsDirPath.resolve(hashedSubdir(id));
+    return Files.isDirectory(subdir) ? subdir.resolve(fileName) : ballotsDirPath.resolve(fileName);
+  }
+
+  /** The path of a ballot's file in a record with hashed subdirectories. */
+  public Path hashedBallotPath(String id) {
+    return ballotsDirPath.resolve(hashedSubdir(id)).resolve(SUBMITTED_BALLOT_PREFIX + id + JSON_SUFFIX);
   }
 
-  public File[] ballotFiles() {
-    if (!Files.exists(ballotsDirPath) || !Files.isDirectory(ballotsDirPath)) {
-      return new File[0];
+  /** The first byte of the SHA-256 of the ballot id, as two lower case hex digits. */
+  public static String hashedSubdir(String ballotId) {
+    try {
+      byte[] hash = MessageDigest.getInstance("SHA-256").digest(ballotId.getBytes(StandardCharsets.UTF_8));
+      return String.format("%02x", hash[0] & 0xff);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** True if there is at least one ballot file. Stops at the first one, without listing the directory. */
+  public boolean hasBallotFiles() {
+    try (Stream<Path> paths = ballotPaths()) {
+      return paths.findAny().isPresent();
+    }
+  }
+
+  /**
+   * The ballot files, listed lazily with a DirectoryStream, including those in hashed subdirectories.
+   * Only entries named like a hashedSubdir() are looked into, so the files of a flat record are not each
+   * checked for being a directory. Must be closed.
+   */
+  public Stream<Path> ballotPaths() {
+    if (!Files.isDirectory(ballotsDirPath)) {
+      return Stream.empty();
+    }
+    DirectoryStream<Path> top = newDirectoryStream(ballotsDirPath);
+    return StreamSupport.stream(top.spliterator(), false)
+            .onClose(() -> close(top))
+            .flatMap(path -> {
+              if (!isHashedSubdirName(path.getFileName().toString()) || !Files.isDirectory(path)) {
+                return Stream.of(path);
+              }
+              DirectoryStream<Path> subdir = newDirectoryStream(path);
+              return StreamSupport.stream(subdir.spliterator(), false).onClose(() -> close(subdir));
+            })
+            .filter(JsonElectionRecordPath::isBallotFile);
+  }
+
+  private static boolean isHashedSubdirName(String name) {
+    return name.length() == 2 && Character.digit(name.charAt(0), 16) >= 0 && Character.digit(name.charAt(1), 16) >= 0;
+  }
+
+  private static List<Path> list(Path dir) {
+    if (!Files.isDirectory(dir)) {
+      return List.of();
+    }
+    try (Stream<Path> files = Files.list(dir)) {
+      return files.filter(Files::isRegularFile).toList();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static DirectoryStream<Path> newDirectoryStream(Path dir) {
+    try {
+      return Files.newDirectoryStream(dir, path -> !path.getFileName().toString().startsWith("."));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static void close(DirectoryStream<Path> stream) {
+    try {
+      stream.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * The ballot files of one of nshards shards. A file goes to a shard by the hash of its name,
+   * so every process and node agrees on the shards without sharing a listing.
+   */
+  public List<Path> ballotPaths(int shard, int nshards) {
+    try (Stream<Path> paths = ballotPaths()) {
+      return paths.filter(path -> Math.floorMod(path.getFileName().toString().hashCode(), nshards) == shard)
+              .toList();
     }
-    return ballotsDirPath.toFile().listFiles();
   }
 
   public Path spoiledBallotPath(String id) {
@@ -115,11 +321,8 @@ public class JsonElectionRecordPath {
     return spoiledBallotDirPath.resolve(fileName);
   }
 
-  public File[] spoiledBallotFiles() {
-    if (!Files.exists(spoiledBallotDirPath) || !Files.isDirectory(spoiledBallotDirPath)) {
-      return new File[0];
-    }
-    return spoiledBallotDirPath.toFile().listFiles();
+  public List<Path> spoiledBallotPaths() {
+    return list(spoiledBallotDirPath);
   }
 
 }
@@ -0,0 +1,71 @@
+package electionguard.json;
+
+import electionguard.ballot.Manifest;
+import electionguard.publish.ElectionRecord;
+
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Lookup of contest and selection descriptions by id, built once per Manifest.
+ * An ElectionRecordJson builds it along with its Manifest; use ManifestIndex.of(record) to share that one.
+ */
+public class ManifestIndex {
+  private final Manifest manifest;
+  private final Map<String, Manifest.ContestDescription> contests = new HashMap<>();
+  private final Map<String, Map<String, Manifest.SelectionDescription>> selections = new HashMap<>();
+
+  /** The index the record keeps with its manifest, or a new one if the record is not an ElectionRecordJson. */
+  public static ManifestIndex of(ElectionRecord record) {
+    if (record instanceof ElectionRecordJson json) {
+      return json.manifestIndex();
+    }
+    return new ManifestIndex(record.manifest());
+  }
+
+  public ManifestIndex(Manifest manifest) {
+    this.manifest = manifest;
+    for (Manifest.ContestDescription contest : manifest.getContests()) {
+      contests.put(contest.getContestId(), contest);
+      Map<String, Manifest.SelectionDescription> byId = new HashMap<>();
+      for (Manifest.SelectionDescription selection : contest.getSelections()) {
+        byId.put(selection.getSelectionId(), selection);
+      }
+      selections.put(contest.getContestId(), byId);
+    }
+  }
+
+  public Manifest manifest() {
+    return manifest;
+  }
+
+  @Nullable
+  public Manifest.ContestDescription contest(String contestId) {
+    return contests.get(contestId);
+  }
+
+  @Nullable
+  public Manifest.SelectionDescription selection(String contestId, String selectionId) {
+    Map<String, Manifest.SelectionDescription> byId = selections.get(contestId);
+    return byId == null ? null : byId.get(selectionId);
+  }
+
+  /** The contest's sequence order, or -1 if it is not in the manifest. */
+  public int contestSequenceOrder(String contestId) {
+    Manifest.ContestDescription contest = contest(contestId);
+    return contest == null ? -1 : contest.getSequenceOrder();
+  }
+
+  /** The selection's sequence order, or -1 if it is not in the manifest. */
+  public int selectionSequenceOrder(String contestId, String selectionId) {
+    Manifest.SelectionDescription selection = selection(contestId, selectionId);
+    return selection == null ? -1 : selection.getSequenceOrder();
+  }
+
+  @Nullable
+  public String candidateId(String contestId, String selectionId) {
+    Manifest.SelectionDescription selection = selection(contestId, selectionId);
+    return selection == null ? null : selection.getCandidateId();
+  }
+}
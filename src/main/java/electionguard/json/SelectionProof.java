@@ -0,0 +1,48 @@
+package electionguard.json;
+
+import electionguard.ballot.EncryptedBallot;
+import electionguard.core.DisjunctiveChaumPedersenProofKnownNonce;
+import electionguard.core.ElGamalCiphertext;
+import electionguard.core.ElementModP;
+import electionguard.core.ElementModQ;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The disjunctive Chaum-Pedersen proof of one selection, with its commitments (proof_zero_pad, etc).
+ * The commitments are in the JSON record but not in EncryptedBallot.Selection, and are what allow
+ * the proof equations to be checked in a batch, without recomputing the commitments of each proof.
+ */
+public record SelectionProof(String ballotId, String contestId, String selectionId,
+                             ElementModP pad, ElementModP data,
+                             ElementModP zeroPad, ElementModP zeroData, ElementModP onePad, ElementModP oneData,
+                             ElementModQ zeroChallenge, ElementModQ zeroResponse,
+                             ElementModQ oneChallenge, ElementModQ oneResponse,
+                             ElementModQ challenge) {
+
+  /**
+   * The selection proofs of a ballot, from the commitments of each of its selection proofs, in order,
+   * as kept by EncryptedBallotTypeAdapter.readWithProofs(). A selection without a proof is left out.
+   */
+  static List<SelectionProof> of(EncryptedBallot ballot, List<ElementModP[]> commitments) {
+    List<SelectionProof> result = new ArrayList<>(commitments.size());
+    int next = 0;
+    for (EncryptedBallot.Contest contest : ballot.getContests()) {
+      for (EncryptedBallot.Selection selection : contest.getSelections()) {
+        DisjunctiveChaumPedersenProofKnownNonce proof = selection.getProof();
+        if (proof == null) {
+          continue;
+        }
+        ElementModP[] commitment = commitments.get(next++);
+        ElGamalCiphertext ciphertext = selection.getCiphertext();
+        result.add(new SelectionProof(ballot.getBallotId(), contest.getContestId(), selection.getSelectionId(),
+                ciphertext == null ? null : ciphertext.getPad(), ciphertext == null ? null : ciphertext.getData(),
+                commitment[0], commitment[1], commitment[2], commitment[3],
+                proof.getProof0().getC(), proof.getProof0().getR(), proof.getProof1().getC(), proof.getProof1().getR(),
+                proof.getC()));
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,674 @@
+package electionguard.json;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.google.common.flogger.FluentLogger;
+import com.google.gson.Gson;
+import electionguard.ballot.EncryptedBallot;
+import electionguard.ballot.Manifest;
+import electionguard.core.ElementModP;
+import electionguard.core.ElementModQ;
+import electionguard.core.GroupContext;
+import electionguard.core.HashKt;
+import electionguard.core.UInt256;
+import electionguard.core.UInt256Kt;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static electionguard.viewer.KUtils.productionGroup;
+
+/**
+ * Writes a synthetic JSON election record, in the layout of JsonElectionRecordPath, for load and scale testing:
+ * a manifest with one ballot style, guardians, context, ballots with real ElGamal encryptions and proofs,
+ * spoiled ballot decryptions, and the encrypted and decrypted tallies. Ballots are encrypted in parallel.
+ * <pre>
+ *   SyntheticRecord -out dir -ballots 1000000 -contests 10 -selections 5 -guardians 3 -reuse 1000
+ * </pre>
+ * The proofs follow the equations checked by BatchProofVerifier. The ballot codes and crypto hashes are
+ * consistent hashes of the ballot contents, but not the ones the spec defines, and the ballots are not chained.
+ * All guardians are needed to decrypt, so there are no compensated shares.
+ *
+ * <p>With -reuse n, each selection takes one of n encryptions of its vote made in advance, instead of a new one.
+ * The proofs of those encryptions don't depend on the ballot, so each is still valid, only not unique,
+ * and only the contest proofs are made per ballot. That makes millions of ballots take minutes instead of days.
+ */
+public class SyntheticRecord {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+  private static final Gson gson = GsonTypeAdapters.enhancedGson();
+  private static final String STYLE_ID = "style-0";
+  private static final String DISTRICT_ID = "district-0";
+  private static final long DEVICE_ID = 1L;
+
+  private static class CommandLine {
+    @Parameter(names = {"-out"}, order = 0, description = "Directory to write the election record to", required = true)
+    String outputDir;
+
+    @Parameter(names = {"-ballots"}, order = 1, description = "Number of cast ballots")
+    int nballots = 1000;
+
+    @Parameter(names = {"-spoiled"}, order = 2, description = "Number of spoiled ballots")
+    int nspoiled = 10;
+
+    @Parameter(names = {"-contests"}, order = 3, description = "Number of contests")
+    int ncontests = 5;
+
+    @Parameter(names = {"-selections"}, order = 4, description = "Number of selections in each contest")
+    int nselections = 4;
+
+    @Parameter(names = {"-votesAllowed"}, order = 5, description = "Votes allowed in each contest")
+    int votesAllowed = 1;
+
+    @Parameter(names = {"-guardians"}, order = 6, description = "Number of guardians")
+    int nguardians = 3;
+
+    @Parameter(names = {"-reuse"}, order = 7, description = "Draw selection encryptions from a pool of this many for each vote, 0 to encrypt each one")
+    int reuse = 0;
+
+    @Parameter(names = {"-hashed"}, order = 8, description = "Put the ballot files in hashed subdirectories of submitted_ballots")
+    boolean hashed = false;
+
+    @Parameter(names = {"-nthreads"}, order = 9, description = "Number of threads, default is the number of processors")
+    int nthreads = Runtime.getRuntime().availableProcessors();
+
+    @Parameter(names = {"-h", "--help"}, order = 10, description = "Display this help and exit", help = true)
+    boolean help = false;
+
+    private final JCommander jc;
+
+    CommandLine(String progName, String[] args) throws ParameterException {
+      this.jc = new JCommander(this);
+      this.jc.parse(args);
+      jc.setProgramName(progName);
+    }
+
+    void printUsage() {
+      StringBuilder sb = new StringBuilder();
+      this.jc.usage(sb);
+      System.out.println(sb);
+    }
+  }
+
+  public static void main(String[] args) {
+    String progName = SyntheticRecord.class.getName();
+    CommandLine cmdLine;
+    try {
+      cmdLine = new CommandLine(progName, args);
+      if (cmdLine.help) {
+        cmdLine.printUsage();
+        return;
+      }
+      if (cmdLine.votesAllowed < 1 || cmdLine.votesAllowed > cmdLine.nselections || cmdLine.nguardians < 1) {
+        throw new ParameterException("need 1 <= votesAllowed <= selections and at least one guardian");
+      }
+    } catch (ParameterException e) {
+      System.err.println(e.getMessage());
+      System.err.printf("Try '%s --help' for more information.%n", progName);
+      System.exit(2);
+      return;
+    }
+
+    long start = System.nanoTime();
+    try {
+      SyntheticRecord generator = new SyntheticRecord(Path.of(cmdLine.outputDir), cmdLine.ncontests,
+              cmdLine.nselections, cmdLine.votesAllowed, cmdLine.nguardians);
+      generator.setHashedSubdirs(cmdLine.hashed);
+      generator.generate(cmdLine.nballots, cmdLine.nspoiled, cmdLine.reuse, cmdLine.nthreads);
+    } catch (Exception e) {
+      System.err.printf("Failed writing the election record: %s%n", e.getMessage());
+      System.exit(2);
+    }
+    System.out.printf("Wrote %d ballots to %s in %.1f secs%n", cmdLine.nballots + cmdLine.nspoiled,
+            cmdLine.outputDir, (System.nanoTime() - start) * 1.0e-9);
+  }
+
+  /** An encrypted vote, with the nonce, which the contest proof and the tally need. */
+  private record Encryption(int vote, BigInteger nonce, ElementModP pad, ElementModP data,
+                            EncryptedBallotPojo.DisjunctiveChaumPedersenProofPojo proof) {}
+
+  /** Running products of the cast ciphertexts, and the votes, per contest and selection. One per thread. */
+  private class TallySum {
+    final ElementModP[][] pads = new ElementModP[ncontests][nselections];
+    final ElementModP[][] datas = new ElementModP[ncontests][nselections];
+    final int[][] votes = new int[ncontests][nselections];
+
+    void add(int contest, int selection, Encryption encryption) {
+      pads[contest][selection] = pads[contest][selection] == null ? encryption.pad() :
+              pads[contest][selection].times(encryption.pad());
+      datas[contest][selection] = datas[contest][selection] == null ? encryption.data() :
+              datas[contest][selection].times(encryption.data());
+      votes[contest][selection] += encryption.vote();
+    }
+
+    void merge(TallySum other) {
+      for (int c = 0; c < ncontests; c++) {
+        for (int s = 0; s < nselections; s++) {
+          if (other.pads[c][s] != null) {
+            pads[c][s] = pads[c][s] == null ? other.pads[c][s] : pads[c][s].times(other.pads[c][s]);
+            datas[c][s] = datas[c][s] == null ? other.datas[c][s] : datas[c][s].times(other.datas[c][s]);
+            votes[c][s] += other.votes[c][s];
+          }
+        }
+      }
+    }
+  }
+
+  private final JsonElectionRecordPath paths;
+  private final int ncontests;
+  private final int nselections;
+  private final int votesAllowed;
+  private final int nguardians;
+
+  private final GroupContext group = productionGroup();
+  private final ThreadLocal<SecureRandom> random = ThreadLocal.withInitial(SecureRandom::new); // one per thread, uncontended
+  private final BigInteger q;
+  private final ElementModP one;
+  private final ElementModP g;
+
+  // set by generate()
+  private Manifest manifest;
+  private UInt256 codeSeed;
+  private ElementModP publicKey;
+  private ElementModQ qbar;
+  private final List<BigInteger> secrets = new ArrayList<>();
+  private final List<ElementModP> guardianKeys = new ArrayList<>();
+  private final List<List<Encryption>> pool = new ArrayList<>();
+  private boolean hashedSubdirs;
+
+  public SyntheticRecord(Path outputDir, int ncontests, int nselections, int votesAllowed, int nguardians)
+          throws IOException {
+    this.paths = new JsonElectionRecordPath(outputDir);
+    this.ncontests = ncontests;
+    this.nselections = nselections;
+    this.votesAllowed = votesAllowed;
+    this.nguardians = nguardians;
+    this.q = new BigInteger(1, group.getConstants().getSmallPrime());
+    this.one = group.gPowP(toQ(BigInteger.ZERO));
+    this.g = group.gPowP(toQ(BigInteger.ONE));
+  }
+
+  /** Put the ballot files in hashed subdirectories, see JsonElectionRecordPath.hashedSubdir(). */
+  public void setHashedSubdirs(boolean hashedSubdirs) {
+    this.hashedSubdirs = hashedSubdirs;
+  }
+
+  /** Write the record, with nballots cast and nspoiled spoiled ballots. */
+  public void generate(int nballots, int nspoiled, int reuse, int nthreads) throws IOException, InterruptedException {
+    for (Path dir : List.of(paths.topPath(), paths.ballotsDirPath, paths.spoiledBallotDirPath, paths.guardianDirPath,
+            paths.devicesDirPath)) {
+      Files.createDirectories(dir);
+    }
+    writeConstants();
+    ManifestPojo manifestPojo = manifest();
+    write(paths.manifestPath(), manifestPojo);
+    // read back, for the description hashes
+    this.manifest = ManifestPojo.deserialize(gson.toJsonTree(manifestPojo));
+    writeGuardians();
+    writeContext();
+    writeDevice();
+    this.codeSeed = HashKt.hashElements(DEVICE_ID, manifest.getCryptoHash());
+
+    if (reuse > 0) {
+      for (int vote = 0; vote <= 1; vote++) {
+        int v = vote;
+        pool.add(inPool(nthreads, () -> IntStream.range(0, reuse).parallel().mapToObj(i -> encrypt(v)).toList()));
+      }
+    }
+
+    Map<Thread, TallySum> partials = new ConcurrentHashMap<>();
+    AtomicInteger done = new AtomicInteger();
+    long start = System.nanoTime();
+    inPool(nthreads, () -> {
+      IntStream.range(0, nballots + nspoiled).parallel().forEach(i -> {
+        TallySum sum = partials.computeIfAbsent(Thread.currentThread(), t -> new TallySum());
+        writeBallot(i, i >= nballots, sum);
+        int count = done.incrementAndGet();
+        if (count % 10000 == 0) {
+          logger.atInfo().log("%d ballots, %.1f/s", count, count / ((System.nanoTime() - start) * 1.0e-9));
+        }
+      });
+      return null;
+    });
+
+    TallySum tally = new TallySum();
+    partials.values().forEach(tally::merge);
+    writeTallies(tally);
+  }
+
+  private <T> T inPool(int nthreads, java.util.concurrent.Callable<T> task) throws InterruptedException {
+    ForkJoinPool forkJoinPool = new ForkJoinPool(Math.max(1, nthreads));
+    try {
+      return forkJoinPool.submit(task).get();
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Failed generating ballots", e.getCause());
+    } finally {
+      forkJoinPool.shutdown();
+    }
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  // election setup
+
+  private void writeConstants() throws IOException {
+    ElectionConstantsPojo pojo = new ElectionConstantsPojo();
+    pojo.name = "synthetic";
+    pojo.large_prime = new BigInteger(1, group.getConstants().getLargePrime());
+    pojo.small_prime = q;
+    pojo.cofactor = new BigInteger(1, group.getConstants().getCofactor());
+    pojo.generator = new BigInteger(1, group.getConstants().getGenerator());
+    write(paths.constantsPath(), pojo);
+  }
+
+  private ManifestPojo manifest() {
+    ManifestPojo pojo = new ManifestPojo();
+    pojo.election_scope_id = String.format("synthetic-%dx%d", ncontests, nselections);
+    pojo.spec_version = "1.0";
+    pojo.type = "general";
+    pojo.start_date = "2022-11-08T06:00:00+00:00";
+    pojo.end_date = "2022-11-08T20:00:00+00:00";
+    pojo.name = text("Synthetic election with " + ncontests + " contests");
+
+    ManifestPojo.GeopoliticalUnit district = new ManifestPojo.GeopoliticalUnit();
+    district.object_id = DISTRICT_ID;
+    district.name = "District 0";
+    district.type = "county";
+    pojo.geopolitical_units = List.of(district);
+    pojo.parties = List.of();
+
+    pojo.candidates = new ArrayList<>();
+    pojo.contests = new ArrayList<>();
+    for (int c = 0; c < ncontests; c++) {
+      ManifestPojo.ContestDescription contest = new ManifestPojo.ContestDescription();
+      contest.object_id = contestId(c);
+      contest.sequence_order = c;
+      contest.electoral_district_id = DISTRICT_ID;
+      contest.vote_variation = votesAllowed == 1 ? "one_of_m" : "n_of_m";
+      contest.number_elected = votesAllowed;
+      contest.votes_allowed = votesAllowed;
+      contest.name = "Contest " + c;
+      contest.ballot_title = text("Contest " + c);
+      contest.primary_party_ids = List.of();
+      contest.ballot_selections = new ArrayList<>();
+      for (int s = 0; s < nselections; s++) {
+        ManifestPojo.Candidate candidate = new ManifestPojo.Candidate();
+        candidate.object_id = "candidate-" + c + "-" + s;
+        candidate.name = text("Candidate " + c + "-" + s);
+        pojo.candidates.add(candidate);
+
+        ManifestPojo.SelectionDescription selection = new ManifestPojo.SelectionDescription();
+        selection.object_id = selectionId(c, s);
+        selection.candidate_id = candidate.object_id;
+        selection.sequence_order = s;
+        contest.ballot_selections.add(selection);
+      }
+      pojo.contests.add(contest);
+    }
+
+    ManifestPojo.BallotStyle style = new ManifestPojo.BallotStyle();
+    style.object_id = STYLE_ID;
+    style.geopolitical_unit_ids = List.of(DISTRICT_ID);
+    pojo.ballot_styles = List.of(style);
+    return pojo;
+  }
+
+  private static ManifestPojo.InternationalizedText text(String value) {
+    ManifestPojo.Language language = new ManifestPojo.Language();
+    language.value = value;
+    language.language = "en";
+    ManifestPojo.InternationalizedText text = new ManifestPojo.InternationalizedText();
+    text.text = List.of(language);
+    return text;
+  }
+
+  /** Each guardian has one polynomial coefficient, its secret, since all of them are needed to decrypt. */
+  private void writeGuardians() throws IOException {
+    ElementModP jointKey = one;
+    for (int i = 1; i <= nguardians; i++) {
+      BigInteger secret = randomQ();
+      ElementModP key = group.gPowP(toQ(secret));
+      secrets.add(secret);
+      guardianKeys.add(key);
+      jointKey = jointKey.times(key);
+
+      GuardianRecordPojo.SchnorrProofPojo proof = new GuardianRecordPojo.SchnorrProofPojo();
+      BigInteger u = randomQ();
+      proof.public_key = key;
+      proof.commitment = group.gPowP(toQ(u));
+      BigInteger c = hashToQ(key, proof.commitment);
+      proof.challenge = toQ(c);
+      proof.response = toQ(u.add(c.multiply(secret)));
+
+      GuardianRecordPojo pojo = new GuardianRecordPojo();
+      pojo.guardian_id = Integer.toString(i);
+      pojo.sequence_order = i;
+      pojo.election_public_key = key;
+      pojo.election_commitments = List.of(key);
+      pojo.election_proofs = List.of(proof);
+      write(paths.guardianRecordsPath(pojo.guardian_id), pojo);
+    }
+    this.publicKey = jointKey.acceleratePow();
+  }
+
+  private void writeContext() throws IOException {
+    ElectionContextPojo pojo = new ElectionContextPojo();
+    pojo.number_of_guardians = nguardians;
+    pojo.quorum = nguardians;
+    pojo.elgamal_public_key = publicKey;
+    pojo.manifest_hash = manifest.getCryptoHash();
+    pojo.crypto_base_hash = HashKt.hashElements(q, nguardians, nguardians, manifest.getCryptoHash());
+    pojo.commitment_hash = HashKt.hashElements(guardianKeys);
+    pojo.crypto_extended_base_hash = HashKt.hashElements(pojo.crypto_base_hash, pojo.commitment_hash);
+    write(paths.contextPath(), pojo);
+    this.qbar = UInt256Kt.toElementModQ(pojo.crypto_extended_base_hash, group);
+
+    // the Lagrange coefficients of the guardians at 0, for when all of them decrypt
+    Map<String, ElementModQ> coefficients = new HashMap<>();
+    for (int i = 1; i <= nguardians; i++) {
+      BigInteger numerator = BigInteger.ONE;
+      BigInteger denominator = BigInteger.ONE;
+      for (int j = 1; j <= nguardians; j++) {
+        if (j != i) {
+          numerator = numerator.multiply(BigInteger.valueOf(j));
+          denominator = denominator.multiply(BigInteger.valueOf(j - i));
+        }
+      }
+      coefficients.put(Integer.toString(i), toQ(numerator.multiply(denominator.mod(q).modInverse(q))));
+    }
+    write(paths.coefficientsPath(), new LagrangeCoefficientsPojo(coefficients));
+  }
+
+  private void writeDevice() throws IOException {
+    EncryptionDevicePojo pojo = new EncryptionDevicePojo();
+    pojo.device_id = DEVICE_ID;
+    pojo.session_id = 1L;
+    pojo.launch_code = 1L;
+    pojo.location = "synthetic";
+    write(paths.devicePath(Long.toString(DEVICE_ID)), pojo);
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  // ballots
+
+  private void writeBallot(int index, boolean spoiled, TallySum tally) {
+    String ballotId = String.format("ballot-%09d", index);
+    EncryptedBallotPojo pojo = new EncryptedBallotPojo();
+    pojo.object_id = ballotId;
+    pojo.style_id = STYLE_ID;
+    pojo.manifest_hash = manifest.getCryptoHash();
+    pojo.code_seed = codeSeed;
+    pojo.timestamp = System.currentTimeMillis() / 1000;
+    pojo.state = spoiled ? EncryptedBallot.BallotState.SPOILED : EncryptedBallot.BallotState.CAST;
+    pojo.contests = new ArrayList<>(ncontests);
+
+    PlaintextTallyPojo decrypted = spoiled ? newPlaintextTally(ballotId) : null;
+    List<UInt256> contestHashes = new ArrayList<>(ncontests);
+    for (int c = 0; c < ncontests; c++) {
+      Manifest.ContestDescription mcontest = manifest.getContests().get(c);
+      List<Integer> votes = votes();
+      List<Encryption> encryptions = new ArrayList<>(nselections + votesAllowed);
+      List<EncryptedBallotPojo.EncryptedBallotSelectionPojo> selections = new ArrayList<>(nselections + votesAllowed);
+      List<UInt256> selectionHashes = new ArrayList<>(nselections + votesAllowed);
+      for (int s = 0; s < nselections + votesAllowed; s++) {
+        boolean placeholder = s >= nselections;
+        Encryption encryption = encryptOrReuse(votes.get(s));
+        encryptions.add(encryption);
+        String selectionId = placeholder ? contestId(c) + "-placeholder-" + (s - nselections) : selectionId(c, s);
+        UInt256 descriptionHash = placeholder ? HashKt.hashElements(selectionId) :
+                mcontest.getSelections().get(s).getCryptoHash();
+        EncryptedBallotPojo.EncryptedBallotSelectionPojo selection = new EncryptedBallotPojo.EncryptedBallotSelectionPojo();
+        selection.object_id = selectionId;
+        selection.sequence_order = s;
+        selection.description_hash = descriptionHash;
+        selection.ciphertext = new EncryptedBallotPojo.ElGamalCiphertextPojo();
+        selection.ciphertext.pad = encryption.pad();
+        selection.ciphertext.data = encryption.data();
+        selection.crypto_hash = HashKt.hashElements(selectionId, descriptionHash, encryption.pad(), encryption.data());
+        selection.is_placeholder_selection = placeholder;
+        selection.proof = encryption.proof();
+        selections.add(selection);
+        selectionHashes.add(selection.crypto_hash);
+
+        if (!placeholder) {
+          if (spoiled) {
+            addDecryption(decrypted, contestId(c), selectionId, encryption.vote(), encryption.pad(), encryption.data());
+          } else {
+            tally.add(c, s, encryption);
+          }
+        }
+      }
+
+      EncryptedBallotPojo.EncryptedBallotContestPojo contest = new EncryptedBallotPojo.EncryptedBallotContestPojo();
+      contest.object_id = contestId(c);
+      contest.sequence_order = c;
+      contest.description_hash = mcontest.getCryptoHash();
+      contest.ballot_selections = selections;
+      contest.crypto_hash = HashKt.hashElements(contest.object_id, contest.description_hash, selectionHashes);
+      contest.proof = contestProof(encryptions);
+      pojo.contests.add(contest);
+      contestHashes.add(contest.crypto_hash);
+    }
+    pojo.crypto_hash = HashKt.hashElements(ballotId, pojo.manifest_hash, contestHashes);
+    pojo.code = HashKt.hashElements(codeSeed, pojo.timestamp, pojo.crypto_hash);
+
+    try {
+      Path ballotPath = hashedSubdirs ? paths.hashedBallotPath(ballotId) : paths.ballotPath(ballotId);
+      Files.createDirectories(ballotPath.getParent());
+      write(ballotPath, pojo);
+      if (spoiled) {
+        write(paths.spoiledBallotPath(ballotId), decrypted);
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed writing ballot " + ballotId, e);
+    }
+  }
+
+  /** The votes for the selections of a contest, then for its placeholders, which make up the votes allowed. */
+  private List<Integer> votes() {
+    List<Integer> order = new ArrayList<>(nselections);
+    for (int s = 0; s < nselections; s++) {
+      order.add(s);
+    }
+    Collections.shuffle(order, random.get());
+    int nvotes = random.get().nextInt(votesAllowed + 1); // may undervote
+    List<Integer> votes = new ArrayList<>(Collections.nCopies(nselections + votesAllowed, 0));
+    for (int i = 0; i < nvotes; i++) {
+      votes.set(order.get(i), 1);
+    }
+    for (int i = 0; i < votesAllowed - nvotes; i++) {
+      votes.set(nselections + i, 1);
+    }
+    return votes;
+  }
+
+  private Encryption encryptOrReuse(int vote) {
+    if (pool.isEmpty()) {
+      return encrypt(vote);
+    }
+    List<Encryption> encryptions = pool.get(vote);
+    return encryptions.get(random.get().nextInt(encryptions.size()));
+  }
+
+  /** Encrypt 0 or 1, with a disjunctive proof that simulates the branch of the other value. */
+  private Encryption encrypt(int vote) {
+    BigInteger r = randomQ();
+    ElementModP alpha = group.gPowP(toQ(r));
+    ElementModP beta = vote == 1 ? g.times(publicKey.powP(toQ(r))) : publicKey.powP(toQ(r));
+
+    BigInteger u = randomQ();
+    BigInteger cfake = randomQ();
+    BigInteger vfake = randomQ();
+    ElementModP a0, b0, a1, b1;
+    if (vote == 0) {
+      a0 = group.gPowP(toQ(u));
+      b0 = publicKey.powP(toQ(u));
+      a1 = group.gPowP(toQ(vfake)).times(alpha.powP(toQ(cfake.negate())));
+      b1 = group.gPowP(toQ(cfake)).times(publicKey.powP(toQ(vfake))).times(beta.powP(toQ(cfake.negate())));
+    } else {
+      a0 = group.gPowP(toQ(vfake)).times(alpha.powP(toQ(cfake.negate())));
+      b0 = publicKey.powP(toQ(vfake)).times(beta.powP(toQ(cfake.negate())));
+      a1 = group.gPowP(toQ(u));
+      b1 = publicKey.powP(toQ(u));
+    }
+    BigInteger c = hashToQ(qbar, alpha, beta, a0, b0, a1, b1);
+    BigInteger creal = c.subtract(cfake).mod(q);
+    BigInteger vreal = u.add(creal.multiply(r));
+
+    EncryptedBallotPojo.DisjunctiveChaumPedersenProofPojo proof = new EncryptedBallotPojo.DisjunctiveChaumPedersenProofPojo();
+    proof.proof_zero_pad = a0;
+    proof.proof_zero_data = b0;
+    proof.proof_one_pad = a1;
+    proof.proof_one_data = b1;
+    proof.challenge = toQ(c);
+    proof.proof_zero_challenge = toQ(vote == 0 ? creal : cfake);
+    proof.proof_zero_response = toQ(vote == 0 ? vreal : vfake);
+    proof.proof_one_challenge = toQ(vote == 0 ? cfake : creal);
+    proof.proof_one_response = toQ(vote == 0 ? vfake : vreal);
+    return new Encryption(vote, r, alpha, beta, proof);
+  }
+
+  /** Proof that the selections of a contest, with its placeholders, add up to the votes allowed. */
+  private EncryptedBallotPojo.ConstantChaumPedersenProofPojo contestProof(List<Encryption> encryptions) {
+    ElementModP alpha = one;
+    ElementModP beta = one;
+    BigInteger nonce = BigInteger.ZERO;
+    for (Encryption encryption : encryptions) {
+      alpha = alpha.times(encryption.pad());
+      beta = beta.times(encryption.data());
+      nonce = nonce.add(encryption.nonce());
+    }
+    BigInteger u = randomQ();
+    EncryptedBallotPojo.ConstantChaumPedersenProofPojo proof = new EncryptedBallotPojo.ConstantChaumPedersenProofPojo();
+    proof.pad = group.gPowP(toQ(u));
+    proof.data = publicKey.powP(toQ(u));
+    BigInteger c = hashToQ(qbar, alpha, beta, proof.pad, proof.data);
+    proof.challenge = toQ(c);
+    proof.response = toQ(u.add(c.multiply(nonce)));
+    proof.constant = votesAllowed;
+    return proof;
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  // tallies
+
+  private void writeTallies(TallySum tally) throws IOException {
+    EncryptedTallyPojo encrypted = new EncryptedTallyPojo();
+    encrypted.object_id = "election-results";
+    encrypted.contests = new HashMap<>();
+    PlaintextTallyPojo decrypted = newPlaintextTally("election-results");
+    for (int c = 0; c < ncontests; c++) {
+      Manifest.ContestDescription mcontest = manifest.getContests().get(c);
+      EncryptedTallyPojo.CiphertextTallyContestPojo contest = new EncryptedTallyPojo.CiphertextTallyContestPojo();
+      contest.object_id = contestId(c);
+      contest.sequence_order = c;
+      contest.description_hash = mcontest.getCryptoHash();
+      contest.selections = new HashMap<>();
+      for (int s = 0; s < nselections; s++) {
+        // a selection with no cast ballots has the encryption of 0 with nonce 0
+        ElementModP pad = tally.pads[c][s] == null ? one : tally.pads[c][s];
+        ElementModP data = tally.datas[c][s] == null ? one : tally.datas[c][s];
+        EncryptedTallyPojo.CiphertextTallySelectionPojo selection = new EncryptedTallyPojo.CiphertextTallySelectionPojo();
+        selection.object_id = selectionId(c, s);
+        selection.sequence_order = s;
+        selection.description_hash = mcontest.getSelections().get(s).getCryptoHash();
+        selection.ciphertext = new EncryptedTallyPojo.CiphertextPojo();
+        selection.ciphertext.pad = pad;
+        selection.ciphertext.data = data;
+        contest.selections.put(selection.object_id, selection);
+        addDecryption(decrypted, contestId(c), selection.object_id, tally.votes[c][s], pad, data);
+      }
+      encrypted.contests.put(contest.object_id, contest);
+    }
+    write(paths.encryptedTallyPath(), encrypted);
+    write(paths.tallyPath(), decrypted);
+  }
+
+  private static PlaintextTallyPojo newPlaintextTally(String id) {
+    PlaintextTallyPojo pojo = new PlaintextTallyPojo();
+    pojo.object_id = id;
+    pojo.contests = new HashMap<>();
+    return pojo;
+  }
+
+  /** Add the decryption of (pad, data), which encrypts count, with each guardian's share and its proof. */
+  private void addDecryption(PlaintextTallyPojo tally, String contestId, String selectionId, int count,
+                             ElementModP pad, ElementModP data) {
+    PlaintextTallyPojo.PlaintextTallyContestPojo contest = tally.contests.computeIfAbsent(contestId, id -> {
+      PlaintextTallyPojo.PlaintextTallyContestPojo pojo = new PlaintextTallyPojo.PlaintextTallyContestPojo();
+      pojo.object_id = id;
+      pojo.selections = new HashMap<>();
+      return pojo;
+    });
+
+    PlaintextTallyPojo.PlaintextTallySelectionPojo selection = new PlaintextTallyPojo.PlaintextTallySelectionPojo();
+    selection.object_id = selectionId;
+    selection.tally = count;
+    selection.value = group.gPowP(toQ(BigInteger.valueOf(count)));
+    selection.message = new EncryptedTallyPojo.CiphertextPojo();
+    selection.message.pad = pad;
+    selection.message.data = data;
+    selection.shares = new ArrayList<>(nguardians);
+    for (int i = 0; i < nguardians; i++) {
+      ElementModP share = pad.powP(toQ(secrets.get(i)));
+      BigInteger u = randomQ();
+      PlaintextTallyPojo.ChaumPedersenProofPojo proof = new PlaintextTallyPojo.ChaumPedersenProofPojo();
+      proof.pad = group.gPowP(toQ(u));
+      proof.data = pad.powP(toQ(u));
+      BigInteger c = hashToQ(qbar, guardianKeys.get(i), pad, data, proof.pad, proof.data, share);
+      proof.challenge = toQ(c);
+      proof.response = toQ(u.add(c.multiply(secrets.get(i))));
+
+      PlaintextTallyPojo.CiphertextDecryptionSelectionPojo decryption = new PlaintextTallyPojo.CiphertextDecryptionSelectionPojo();
+      decryption.object_id = selectionId;
+      decryption.guardian_id = Integer.toString(i + 1);
+      decryption.share = share;
+      decryption.proof = proof;
+      selection.shares.add(decryption);
+    }
+    contest.selections.put(selectionId, selection);
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+
+  private static String contestId(int contest) {
+    return "contest-" + contest;
+  }
+
+  private static String selectionId(int contest, int selection) {
+    return "contest-" + contest + "-selection-" + selection;
+  }
+
+  private BigInteger randomQ() {
+    return new BigInteger(q.bitLength() + 64, random.get()).mod(q);
+  }
+
+  private ElementModQ toQ(BigInteger x) {
+    return group.binaryToElementModQ(x.mod(q).toByteArray());
+  }
+
+  private BigInteger hashToQ(Object... elements) {
+    ElementModQ hash = UInt256Kt.toElementModQ(HashKt.hashElements(elements), group);
+    return new BigInteger(1, hash.byteArray());
+  }
+
+  private static void write(Path path, Object pojo) throws IOException {
+    try (Writer out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+      gson.toJson(pojo, out);
+    }
+  }
+}
@@ -0,0 +1,222 @@
+package electionguard.json;
+
+import com.google.common.flogger.FluentLogger;
+import electionguard.ballot.EncryptedBallot;
+import electionguard.ballot.EncryptedTally;
+
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads the files of a JSON election record from a .tar.gz archive in one streaming pass, without extracting it.
+ * Decompressing is sequential, as gzip has to be, but the ballots are parsed on a pool of threads, with a bounded
+ * number of entries waiting, so memory stays small however large the archive is.
+ * A tar.gz has no index and can't be read at random, so it can't be opened as a record; use a zip for that.
+ * It can be re-tallied, see ReTally.accumulate(Path) and VerifyMain -retally.
+ * Reads ustar archives, with GNU and pax long names.
+ */
+public class TarGzRecord {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+  private static final int BLOCK = 512;
+  private static final int BUFFER = 1 << 16;
+
+  /** A regular file in the archive: its name in the archive, and its contents. */
+  public record Entry(String name, byte[] contents) {}
+
+  /** True if the path is a .tar.gz or .tgz file. */
+  public static boolean isTarGz(Path path) {
+    String name = path.getFileName() == null ? "" : path.getFileName().toString().toLowerCase();
+    return (name.endsWith(".tar.gz") || name.endsWith(".tgz")) && Files.isRegularFile(path);
+  }
+
+  /** True if the entry is an encrypted ballot file, in submitted_ballots or one of its hashed subdirectories. */
+  public static boolean isBallotEntry(String name) {
+    String fileName = name.substring(name.lastIndexOf('/') + 1);
+    return JsonElectionRecordPath.isBallotFileName(fileName)
+            && name.contains(JsonElectionRecordPath.SUBMITTED_BALLOTS_DIR + "/");
+  }
+
+  /**
+   * Call the visitor, on this thread and in archive order, with each regular file whose name is wanted.
+   * The other files are skipped without being read into memory.
+   */
+  public static void forEachEntry(Path archive, Predicate<String> wanted, Consumer<Entry> visitor) throws IOException {
+    try (InputStream in = new GZIPInputStream(new BufferedInputStream(Files.newInputStream(archive), BUFFER), BUFFER)) {
+      byte[] header = new byte[BLOCK];
+      String longName = null;
+      while (in.readNBytes(header, 0, BLOCK) == BLOCK && !isZeros(header)) {
+        long size = size(header);
+        long padding = (BLOCK - size % BLOCK) % BLOCK;
+        byte type = header[156];
+        String name = longName != null ? longName : name(header);
+        longName = null;
+
+        if (type == 'L') { // GNU long name of the next entry
+          longName = string(readContents(in, size), 0, (int) size);
+        } else if (type == 'x') { // pax extended header of the next entry
+          longName = paxPath(readContents(in, size));
+        } else if ((type == '0' || type == 0) && wanted.test(name)) {
+          visitor.accept(new Entry(name, readContents(in, size)));
+        } else {
+          in.skipNBytes(size);
+        }
+        in.skipNBytes(padding);
+      }
+    }
+  }
+
+  /** True if the entry is the encrypted tally of the record. */
+  public static boolean isEncryptedTallyEntry(String name) {
+    return name.substring(name.lastIndexOf('/') + 1).equals(JsonElectionRecordPath.ENCRYPTED_TALLY_FILE_NAME);
+  }
+
+  /** What reading the ballots found: how many there are, and the encrypted tally, if the archive has one. */
+  public record Contents(int nballots, @Nullable EncryptedTally encryptedTally) {}
+
+  /**
+   * Read the ballots in the archive, parsing them on nthreads, and hand each one to the handler as soon as it is
+   * parsed, in no particular order. The handler is called from multiple threads, and must be thread safe.
+   * Ballots that fail to parse are logged and skipped. The encrypted tally is read in the same pass.
+   */
+  public static Contents readEncryptedBallots(Path archive, int nthreads, Consumer<EncryptedBallot> handler)
+          throws IOException, InterruptedException {
+    int n = Math.max(1, nthreads);
+    ExecutorService pool = Executors.newFixedThreadPool(n);
+    Semaphore waiting = new Semaphore(4 * n); // entries read but not yet parsed
+    AtomicInteger count = new AtomicInteger();
+    AtomicReference<RuntimeException> failure = new AtomicReference<>();
+    AtomicReference<EncryptedTally> encryptedTally = new AtomicReference<>();
+    try {
+      forEachEntry(archive, name -> isBallotEntry(name) || isEncryptedTallyEntry(name), entry -> {
+        if (!isBallotEntry(entry.name())) {
+          encryptedTally.set(JsonConsumer.readEncryptedTally(entry.contents(), entry.name()));
+          return;
+        }
+        try {
+          waiting.acquire();
+        } catch (InterruptedException e) {
+          throw new Interrupted(e); // the visitor can't throw it, see below
+        }
+        pool.execute(() -> {
+          try {
+            EncryptedBallot ballot = JsonConsumer.readEncryptedBallot(entry.contents(), entry.name());
+            if (ballot != null) {
+              handler.accept(ballot);
+              count.incrementAndGet();
+            }
+          } catch (RuntimeException e) {
+            failure.compareAndSet(null, e);
+          } finally {
+            waiting.release();
+          }
+        });
+        if (failure.get() != null) {
+          throw failure.get();
+        }
+      });
+    } catch (Interrupted e) {
+      pool.shutdownNow();
+      throw e.getCause();
+    } finally {
+      pool.shutdown();
+      pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+    }
+    if (failure.get() != null) {
+      throw failure.get();
+    }
+    logger.atFine().log("read %d ballots from '%s'", count.get(), archive);
+    return new Contents(count.get(), encryptedTally.get());
+  }
+
+  /** Carries an InterruptedException out of a visitor, which is a Consumer. */
+  private static class Interrupted extends RuntimeException {
+    Interrupted(InterruptedException cause) {
+      super(cause);
+    }
+
+    @Override
+    public synchronized InterruptedException getCause() {
+      return (InterruptedException) super.getCause();
+    }
+  }
+
+  private static byte[] readContents(InputStream in, long size) throws IOException {
+    if (size > Integer.MAX_VALUE - 8) {
+      throw new IOException("Archive entry too large: " + size + " bytes");
+    }
+    byte[] contents = in.readNBytes((int) size);
+    if (contents.length != size) {
+      throw new EOFException("Truncated archive entry");
+    }
+    return contents;
+  }
+
+  private static String name(byte[] header) {
+    String name = string(header, 0, 100);
+    boolean ustar = string(header, 257, 5).equals("ustar");
+    String prefix = ustar ? string(header, 345, 155) : "";
+    return prefix.isEmpty() ? name : prefix + "/" + name;
+  }
+
+  /** The size field is octal ASCII, or big-endian binary if its high bit is set. */
+  private static long size(byte[] header) throws IOException {
+    if ((header[124] & 0x80) != 0) {
+      long size = 0;
+      for (int i = 125; i < 136; i++) {
+        size = (size << 8) | (header[i] & 0xff);
+      }
+      return size;
+    }
+    String octal = string(header, 124, 12).trim();
+    try {
+      return octal.isEmpty() ? 0 : Long.parseLong(octal, 8);
+    } catch (NumberFormatException e) {
+      throw new IOException("Bad size in archive header: " + octal);
+    }
+  }
+
+  /** The path from pax records of the form "length path=value\n", or null if there is none. */
+  private static String paxPath(byte[] records) {
+    String text = new String(records, StandardCharsets.UTF_8);
+    for (String record : text.split("\n")) {
+      int start = record.indexOf(" path=");
+      if (start >= 0) {
+        return record.substring(start + " path=".length());
+      }
+    }
+    return null;
+  }
+
+  /** A NUL terminated string field. */
+  private static String string(byte[] bytes, int offset, int length) {
+    int end = offset;
+    while (end < offset + length && bytes[end] != 0) {
+      end++;
+    }
+    return new String(bytes, offset, end - offset, StandardCharsets.UTF_8);
+  }
+
+  private static boolean isZeros(byte[] block) {
+    for (byte b : block) {
+      if (b != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
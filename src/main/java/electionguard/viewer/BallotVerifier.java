@@ -0,0 +1,67 @@
+package electionguard.viewer;
+
+import electionguard.ballot.EncryptedBallot;
+import electionguard.ballot.Manifest;
+import electionguard.core.ChaumPedersenKt;
+import electionguard.core.ElGamalCiphertext;
+import electionguard.core.ElGamalKt;
+import electionguard.core.ElGamalPublicKey;
+import electionguard.core.ElementModQ;
+import electionguard.core.GroupContext;
+import electionguard.core.UInt256Kt;
+import electionguard.json.ManifestIndex;
+import electionguard.publish.ElectionRecord;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks the proofs of a single ballot: the disjunctive proof of each selection, and the constant proof
+ * of each contest against the sum of its selections, with the votes allowed in the manifest.
+ * Thread safe. Used where ballots are verified one at a time, see VerificationLedger.
+ */
+class BallotVerifier {
+  private final ManifestIndex manifestIndex;
+  private final ElGamalPublicKey publicKey;
+  private final ElementModQ qbar;
+
+  BallotVerifier(ElectionRecord record, GroupContext group) {
+    if (record.jointPublicKey() == null || record.cryptoExtendedBaseHash() == null) {
+      throw new IllegalStateException("Election record has no joint public key or extended base hash");
+    }
+    this.manifestIndex = ManifestIndex.of(record);
+    this.publicKey = new ElGamalPublicKey(record.jointPublicKey());
+    this.qbar = UInt256Kt.toElementModQ(record.cryptoExtendedBaseHash(), group);
+  }
+
+  boolean verify(EncryptedBallot ballot) {
+    for (EncryptedBallot.Contest contest : ballot.getContests()) {
+      for (EncryptedBallot.Selection selection : contest.getSelections()) {
+        if (selection.getProof() == null ||
+                !ChaumPedersenKt.isValid(selection.getProof(), selection.getCiphertext(), publicKey, qbar)) {
+          return false;
+        }
+      }
+    }
+    return verifyContests(ballot);
+  }
+
+  /** Check only the contest proofs, when the selection proofs are checked by a BatchProofVerifier. */
+  boolean verifyContests(EncryptedBallot ballot) {
+    for (EncryptedBallot.Contest contest : ballot.getContests()) {
+      Manifest.ContestDescription mcontest = manifestIndex.contest(contest.getContestId());
+      if (mcontest == null || contest.getProof() == null) {
+        return false;
+      }
+      List<ElGamalCiphertext> texts = new ArrayList<>(contest.getSelections().size());
+      for (EncryptedBallot.Selection selection : contest.getSelections()) {
+        texts.add(selection.getCiphertext());
+      }
+      ElGamalCiphertext contestSum = ElGamalKt.encryptedSum(texts);
+      if (!ChaumPedersenKt.isValid(contest.getProof(), contestSum, publicKey, qbar, mcontest.getVotesAllowed())) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
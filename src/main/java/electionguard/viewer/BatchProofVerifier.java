@@ -0,0 +1,226 @@
+package electionguard.viewer;
+
+import electionguard.ballot.ElectionConstants;
+import electionguard.core.ElementModP;
+import electionguard.core.ElementModQ;
+import electionguard.core.GroupContext;
+import electionguard.core.HashKt;
+import electionguard.core.UInt256;
+import electionguard.core.UInt256Kt;
+import electionguard.json.SelectionProof;
+import electionguard.publish.ElectionRecord;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks many disjunctive Chaum-Pedersen selection proofs at once. The verification equations of each proof
+ * <pre>
+ *   g^v0 = a0 * alpha^c0,  K^v0 = b0 * beta^c0,  g^v1 = a1 * alpha^c1,  g^c1 * K^v1 = b1 * beta^c1
+ * </pre>
+ * are raised to small random weights and multiplied together over the batch, so that g and K are each raised
+ * to one exponent, and the rest is a single multi-exponentiation. The challenges are still checked per proof,
+ * which only needs a hash, since the JSON record has the commitments a0, b0, a1, b1.
+ * If a batch fails, it is split in half until the failing proofs are found.
+ *
+ * <p>The batch equations only hold for elements of the order q subgroup, so that is checked in a batch too:
+ * (prod x_i^w_i)^q == 1 over the ciphertexts and commitments of every proof, with new random weights.
+ * An element outside the subgroup makes that fail unless the weights happen to cancel its component of small
+ * order r, which happens with probability 1/r. That is 1/2 for a component of order 2, so those are excluded
+ * first with a Jacobi symbol check on each element. A bad proof passes a batch with probability about 2^-64,
+ * or 1/r for a smallest odd prime r dividing the cofactor.
+ */
+class BatchProofVerifier {
+  private static final int WEIGHT_BITS = 64;
+
+  private final GroupContext group;
+  private final BigInteger p;
+  private final BigInteger q;
+  private final BigInteger g;
+  private final BigInteger k;
+  private final ElementModQ qbar;
+  private final SecureRandom random = new SecureRandom();
+
+  /** One proof as BigIntegers. */
+  private record Terms(SelectionProof proof, BigInteger alpha, BigInteger beta,
+                       BigInteger a0, BigInteger b0, BigInteger a1, BigInteger b1,
+                       BigInteger c0, BigInteger v0, BigInteger c1, BigInteger v1, BigInteger c) {}
+
+  BatchProofVerifier(ElectionRecord record, GroupContext group) {
+    if (record.jointPublicKey() == null || record.cryptoExtendedBaseHash() == null) {
+      throw new IllegalStateException("Election record has no joint public key or extended base hash");
+    }
+    ElectionConstants constants = record.constants();
+    this.group = group;
+    this.p = new BigInteger(1, constants.getLargePrime());
+    this.q = new BigInteger(1, constants.getSmallPrime());
+    this.g = new BigInteger(1, constants.getGenerator());
+    this.k = toBig(record.jointPublicKey());
+    this.qbar = UInt256Kt.toElementModQ(record.cryptoExtendedBaseHash(), group);
+  }
+
+  /** Return the proofs that fail. Thread safe. */
+  List<SelectionProof> failures(List<SelectionProof> proofs) {
+    List<SelectionProof> failed = new ArrayList<>();
+    List<Terms> batch = new ArrayList<>(proofs.size());
+    for (SelectionProof proof : proofs) {
+      Terms terms = terms(proof);
+      if (terms == null || !challengesValid(proof, terms) || !residues(terms)) {
+        failed.add(proof);
+      } else {
+        batch.add(terms);
+      }
+    }
+    bisect(batch, failed);
+    return failed;
+  }
+
+  private void bisect(List<Terms> batch, List<SelectionProof> failed) {
+    if (batch.isEmpty() || holds(batch)) {
+      return;
+    }
+    if (batch.size() == 1) {
+      failed.add(batch.get(0).proof());
+      return;
+    }
+    int mid = batch.size() / 2;
+    bisect(batch.subList(0, mid), failed);
+    bisect(batch.subList(mid, batch.size()), failed);
+  }
+
+  /** The batch is in the subgroup, and the weighted product of the verification equations over it holds. */
+  private boolean holds(List<Terms> batch) {
+    return inSubgroup(batch) && equationsHold(batch);
+  }
+
+  /** (prod x_i^w_i)^q == 1 over the ciphertext and commitments of each proof. */
+  private boolean inSubgroup(List<Terms> batch) {
+    List<BigInteger> elements = new ArrayList<>(6 * batch.size());
+    List<BigInteger> weights = new ArrayList<>(6 * batch.size());
+    for (Terms t : batch) {
+      for (BigInteger x : List.of(t.alpha(), t.beta(), t.a0(), t.b0(), t.a1(), t.b1())) {
+        elements.add(x);
+        weights.add(weight());
+      }
+    }
+    return multiExp(elements, weights).modPow(q, p).equals(BigInteger.ONE);
+  }
+
+  /** The weighted product of the verification equations over the batch. */
+  private boolean equationsHold(List<Terms> batch) {
+    BigInteger gExp = BigInteger.ZERO;
+    BigInteger kExp = BigInteger.ZERO;
+    List<BigInteger> bases = new ArrayList<>(6 * batch.size());
+    List<BigInteger> exps = new ArrayList<>(6 * batch.size());
+    for (Terms t : batch) {
+      BigInteger w1 = weight();
+      BigInteger w2 = weight();
+      BigInteger w3 = weight();
+      BigInteger w4 = weight();
+      gExp = gExp.add(w1.multiply(t.v0())).add(w2.multiply(t.v1())).add(w4.multiply(t.c1()));
+      kExp = kExp.add(w3.multiply(t.v0())).add(w4.multiply(t.v1()));
+      bases.add(t.a0());
+      exps.add(w1);
+      bases.add(t.a1());
+      exps.add(w2);
+      bases.add(t.b0());
+      exps.add(w3);
+      bases.add(t.b1());
+      exps.add(w4);
+      // not reduced mod q, since alpha and beta are not known to be in the subgroup
+      bases.add(t.alpha());
+      exps.add(w1.multiply(t.c0()).add(w2.multiply(t.c1())));
+      bases.add(t.beta());
+      exps.add(w3.multiply(t.c0()).add(w4.multiply(t.c1())));
+    }
+    BigInteger lhs = g.modPow(gExp.mod(q), p).multiply(k.modPow(kExp.mod(q), p)).mod(p);
+    return lhs.equals(multiExp(bases, exps));
+  }
+
+  /** The product of bases[i]^exps[i] mod p, sharing the squarings between all the bases. */
+  private BigInteger multiExp(List<BigInteger> bases, List<BigInteger> exps) {
+    int nbits = 0;
+    for (BigInteger exp : exps) {
+      nbits = Math.max(nbits, exp.bitLength());
+    }
+    BigInteger result = BigInteger.ONE;
+    for (int bit = nbits - 1; bit >= 0; bit--) {
+      result = result.multiply(result).mod(p);
+      for (int i = 0; i < bases.size(); i++) {
+        if (exps.get(i).testBit(bit)) {
+          result = result.multiply(bases.get(i)).mod(p);
+        }
+      }
+    }
+    return result;
+  }
+
+  private boolean challengesValid(SelectionProof proof, Terms t) {
+    if (!t.c0().add(t.c1()).mod(q).equals(t.c())) {
+      return false;
+    }
+    UInt256 expected = HashKt.hashElements(qbar, proof.pad(), proof.data(),
+            proof.zeroPad(), proof.zeroData(), proof.onePad(), proof.oneData());
+    return UInt256Kt.toElementModQ(expected, group).equals(proof.challenge());
+  }
+
+  /** Elements of the order q subgroup are quadratic residues, so have no component of order 2. */
+  private boolean residues(Terms t) {
+    for (BigInteger x : List.of(t.alpha(), t.beta(), t.a0(), t.b0(), t.a1(), t.b1())) {
+      if (x.signum() <= 0 || x.compareTo(p) >= 0 || jacobi(x, p) != 1) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private BigInteger weight() {
+    return new BigInteger(WEIGHT_BITS, random).add(BigInteger.ONE);
+  }
+
+  private static Terms terms(SelectionProof proof) {
+    if (proof.pad() == null || proof.data() == null || proof.zeroPad() == null || proof.zeroData() == null ||
+            proof.onePad() == null || proof.oneData() == null || proof.zeroChallenge() == null ||
+            proof.zeroResponse() == null || proof.oneChallenge() == null || proof.oneResponse() == null ||
+            proof.challenge() == null) {
+      return null;
+    }
+    return new Terms(proof, toBig(proof.pad()), toBig(proof.data()),
+            toBig(proof.zeroPad()), toBig(proof.zeroData()), toBig(proof.onePad()), toBig(proof.oneData()),
+            toBig(proof.zeroChallenge()), toBig(proof.zeroResponse()),
+            toBig(proof.oneChallenge()), toBig(proof.oneResponse()), toBig(proof.challenge()));
+  }
+
+  private static BigInteger toBig(ElementModP elem) {
+    return new BigInteger(1, elem.byteArray());
+  }
+
+  private static BigInteger toBig(ElementModQ elem) {
+    return new BigInteger(1, elem.byteArray());
+  }
+
+  /** The Jacobi symbol (a/n) for odd n > 0. */
+  static int jacobi(BigInteger a, BigInteger n) {
+    a = a.mod(n);
+    int result = 1;
+    while (a.signum() != 0) {
+      while (!a.testBit(0)) {
+        a = a.shiftRight(1);
+        int r = n.intValue() & 7;
+        if (r == 3 || r == 5) {
+          result = -result;
+        }
+      }
+      BigInteger temp = a;
+      a = n;
+      n = temp;
+      if ((a.intValue() & 3) == 3 && (n.intValue() & 3) == 3) {
+        result = -result;
+      }
+      a = a.mod(n);
+    }
+    return n.equals(BigInteger.ONE) ? result : 0;
+  }
+}
@@ -2,13 +2,18 @@ package electionguard.viewer;
 
 import electionguard.ballot.DecryptingGuardian;
 import electionguard.ballot.ElectionConstants;
-import electionguard.ballot.EncryptedBallot;
+import electionguard.ballot.EncryptedTally;
 import electionguard.ballot.Manifest;
+import electionguard.ballot.PlaintextTally;
 import electionguard.core.GroupContext;
+import electionguard.json.BallotIndex;
+import electionguard.json.BallotSnapshot;
+import electionguard.json.ElectionRecordJson;
+import electionguard.json.JsonElectionRecordPath;
 import electionguard.json.JsonConsumer;
+import electionguard.json.ManifestIndex;
 import electionguard.publish.Consumer;
 import electionguard.publish.ElectionRecord;
-import electionguard.verifier.Verifier;
 import electionguard.ballot.Guardian;
 import ucar.ui.prefs.ComboBox;
 import ucar.ui.widget.BAMutil;
@@ -17,16 +22,27 @@ import ucar.ui.widget.IndependentWindow;
 import ucar.ui.widget.TextHistoryPane;
 import ucar.util.prefs.PreferencesExt;
 
+import javax.annotation.Nullable;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
+import java.io.Closeable;
+import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Formatter;
-import java.util.stream.StreamSupport;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 
 import static electionguard.publish.ElectionRecordFactoryKt.electionRecordFromConsumer;
 
 class ElectionRecordPanel extends JPanel {
+  private static final Path snapshotDir = Path.of(System.getProperty("user.home"), ".electionguardjava", "snapshots");
+  private static final Path ledgerDir = Path.of(System.getProperty("user.home"), ".electionguardjava", "ledgers");
+  private static final int LOAD_BATCH = 500;
+
   private final PreferencesExt prefs;
   private final JPanel buttPanel = new JPanel();
 
@@ -41,6 +57,22 @@ class ElectionRecordPanel extends JPanel {
   String electionRecordDir = "none";
   GroupContext group = KUtils.productionGroup();
   ElectionRecord record;
+  @Nullable
+  JsonConsumer recordJson; // what record is read from, closed when another record replaces it
+  RecordLoader loader;
+  VerifyWorker verifier;
+  ReTallyWorker retallier;
+  RecordWatcher watcher;
+  boolean recordIsJson;
+
+  final JPanel loadPanel = new JPanel(new BorderLayout());
+  final JLabel loadStatus = new JLabel();
+  final JProgressBar loadProgress = new JProgressBar();
+  final JButton cancelButton = new JButton("Cancel");
+  final JSpinner verifyThreads;
+  final JCheckBox verifyIncremental;
+  final JCheckBox watchRecord;
+  final JCheckBox useSnapshots;
 
   ManifestTable manifestTable;
   EncryptedBallotsTable submittedBallotsTable;
@@ -50,6 +82,11 @@ class ElectionRecordPanel extends JPanel {
 
   ElectionRecordPanel(PreferencesExt prefs, JFrame frame) {
     this.prefs = prefs;
+    int nthreads = prefs.getInt("verifyThreads", VerificationRun.defaultThreads());
+    this.verifyThreads = new JSpinner(new SpinnerNumberModel(nthreads, 1, 1024, 1));
+    this.verifyIncremental = new JCheckBox("incremental", prefs.getBoolean("verifyIncremental", false));
+    this.watchRecord = new JCheckBox("watch", prefs.getBoolean("watchRecord", false));
+    this.useSnapshots = new JCheckBox("snapshots", prefs.getBoolean("useSnapshots", false));
 
     ////// Choose the electionRecordDir
     this.fileChooser = new FileManager(frame, null, null, (PreferencesExt) prefs.node("FileManager"));
@@ -95,14 +132,39 @@ class ElectionRecordPanel extends JPanel {
 
     AbstractAction verifyAction = new AbstractAction() {
       public void actionPerformed(ActionEvent e) {
-        Formatter f = new Formatter();
-        verify(f);
-        ta.setText(f.toString());
-        infoWindow.show();
+        verify();
       }
     };
     BAMutil.setActionProperties(verifyAction, "Dump", "Verify Election Record", false, 'V', -1);
     BAMutil.addActionToContainer(buttPanel, verifyAction);
+    verifyThreads.setToolTipText("number of threads used to verify");
+    buttPanel.add(verifyThreads);
+    verifyIncremental.setToolTipText("only check ballots that are new or changed since the last verify");
+    buttPanel.add(verifyIncremental);
+
+    AbstractAction retallyAction = new AbstractAction() {
+      public void actionPerformed(ActionEvent e) {
+        retally();
+      }
+    };
+    BAMutil.setActionProperties(retallyAction, "GetAll", "Re-tally the CAST ballots and compare to the encrypted tally", false, 'T', -1);
+    BAMutil.addActionToContainer(buttPanel, retallyAction);
+    watchRecord.setToolTipText("add ballots and update the tallies as they are written to the record");
+    watchRecord.addActionListener(e -> {
+      if (watchRecord.isSelected()) {
+        startWatching();
+      } else {
+        stopWatching();
+      }
+    });
+    buttPanel.add(watchRecord);
+    useSnapshots.setToolTipText("keep a binary copy of the ballots in " + snapshotDir + ", so records reopen faster");
+    useSnapshots.addActionListener(e -> {
+      if (!useSnapshots.isSelected()) {
+        BallotSnapshot.evict(snapshotDir, 0);
+      }
+    });
+    buttPanel.add(useSnapshots);
 
     // components
     this.manifestTable = new ManifestTable((PreferencesExt) prefs.node("Manifest"))
@@ -117,6 +179,26 @@ class ElectionRecordPanel extends JPanel {
     this.topPanel.add(new JLabel("dir:"), BorderLayout.WEST);
     this.topPanel.add(electionRecordDirCB, BorderLayout.CENTER);
     this.topPanel.add(buttPanel, BorderLayout.EAST);
+
+    // shown while a record is loading
+    cancelButton.addActionListener(e -> {
+      if (loader != null) {
+        loader.cancel(true);
+      }
+      if (verifier != null) {
+        verifier.cancel(true);
+      }
+      if (retallier != null) {
+        retallier.cancel(true);
+      }
+      loadStatus.setText("Cancelled");
+      cancelButton.setEnabled(false);
+    });
+    this.loadPanel.add(loadStatus, BorderLayout.WEST);
+    this.loadPanel.add(loadProgress, BorderLayout.CENTER);
+    this.loadPanel.add(cancelButton, BorderLayout.EAST);
+    this.loadPanel.setVisible(false);
+    this.topPanel.add(loadPanel, BorderLayout.SOUTH);
     setLayout(new BorderLayout());
     add(topPanel, BorderLayout.NORTH);
 
@@ -131,35 +213,233 @@ class ElectionRecordPanel extends JPanel {
   }
 
   boolean setElectionRecord(String electionRecordLocation) {
-    try {
-      JsonConsumer json = new JsonConsumer(electionRecordLocation);
-      if (json.isValidElectionRecord(new Formatter())) {
-        this.record = json.readElectionRecord();
+    if (loader != null) {
+      loader.cancel(true);
+    }
+    stopWatching();
+    loader = new RecordLoader(electionRecordLocation);
+    loader.execute();
+    return true;
+  }
+
+  /**
+   * Loads a record off the EDT, filling the tables in batches as the data arrives.
+   * Cancelling stops at the next ballot or tally.
+   */
+  private class RecordLoader extends SwingWorker<Void, Runnable> {
+    private final String location;
+    private final long start = System.nanoTime();
+    private long lastShown;
+    private long bytesRead;
+    private int nfiles;
+    private int total = -1;
+    private RecordWatcher loadWatcher;
+    private final Path snapshots = snapshotDir();
+    private JsonConsumer json;
+    private boolean handedOver; // json belongs to the panel now; only used on the EDT
+
+    RecordLoader(String location) {
+      this.location = location;
+      loadStatus.setText("Opening " + location);
+      loadProgress.setIndeterminate(true);
+      cancelButton.setEnabled(true);
+      loadPanel.setVisible(true);
+    }
+
+    @Override
+    protected Void doInBackground() throws Exception {
+      JsonConsumer json = new JsonConsumer(location, snapshots);
+      this.json = json;
+      ElectionRecord loaded;
+      boolean isJson = json.isValidElectionRecord(new Formatter());
+      if (isJson) {
+        if (watchRecord.isSelected() && !JsonElectionRecordPath.isZip(Path.of(location))) {
+          // watch before listing the ballots, so none are missed while loading
+          loadWatcher = new RecordWatcher(location);
+        }
+        json.setReadListener(this::fileRead);
+        loaded = json.readElectionRecord();
+        total = json.ballotFileCount();
       } else {
-        this.record = electionRecordFromConsumer(new Consumer(electionRecordLocation, group));
+        loaded = electionRecordFromConsumer(new Consumer(location, group));
+      }
+      Manifest manifest = loaded.manifest();
+      ManifestIndex manifestIndex = ManifestIndex.of(loaded);
+      publish(() -> {
+        closeQuietly(recordJson);
+        recordJson = json;
+        handedOver = true;
+        record = loaded;
+        recordIsJson = isJson;
+        manifestTable.setElectionManifest(manifest);
+        submittedBallotsTable.clearBallots(manifestIndex, isJson ? json::findEncryptedBallot : null);
+        plaintextTallyTable.clearTallies(manifestIndex);
+        spoiledBallotsTable.clearTallies(manifestIndex);
+      });
+
+      BallotIndex ballotIndex = isJson ? json.ballotIndex() : null;
+      if (ballotIndex != null) {
+        publish(() -> submittedBallotsTable.setBallotIndex(loaded, ballotIndex, json::findEncryptedBallot));
+      } else {
+        sendInBatches(loaded.encryptedBallots(null), submittedBallotsTable::addBallots);
+      }
+      if (isCancelled()) {
+        return null;
       }
 
-      manifestTable.setElectionManifest(record.manifest());
+      EncryptedTally encryptedTally = loaded.encryptedTally();
+      if (encryptedTally != null) {
+        publish(() -> ciphertextTallyTable.setCiphertextTally(encryptedTally));
+      }
+      PlaintextTally decryptedTally = loaded.decryptedTally();
+      if (decryptedTally != null) {
+        publish(() -> plaintextTallyTable.addPlaintextTallies(List.of(decryptedTally)));
+      }
+      sendInBatches(loaded.spoiledBallotTallies(), spoiledBallotsTable::addPlaintextTallies);
+      return null;
+    }
 
-      Iterable<EncryptedBallot> ballots = record.encryptedBallots( null );
-      submittedBallotsTable.setAcceptedBallots(record, ballots);
-      if (record.encryptedTally() != null) {
-        ciphertextTallyTable.setCiphertextTally(record.encryptedTally());
+    private <T> void sendInBatches(Iterable<T> items, java.util.function.Consumer<List<T>> table) {
+      List<T> batch = new ArrayList<>(LOAD_BATCH);
+      for (T item : items) {
+        if (isCancelled()) {
+          return;
+        }
+        batch.add(item);
+        if (batch.size() == LOAD_BATCH) {
+          List<T> send = batch;
+          publish(() -> table.accept(send));
+          batch = new ArrayList<>(LOAD_BATCH);
+        }
       }
-      if (record.decryptedTally() != null) {
-        plaintextTallyTable.setPlaintextTallies(record.manifest(), java.util.List.of(record.decryptedTally()));
+      if (!batch.isEmpty()) {
+        List<T> send = batch;
+        publish(() -> table.accept(send));
+      }
+    }
+
+    /** Called on the worker thread after each ballot file is read. */
+    private void fileRead(long nbytes) {
+      if (isCancelled()) {
+        throw new CancellationException();
+      }
+      nfiles++;
+      bytesRead += nbytes;
+      long now = System.nanoTime();
+      if (now - lastShown > 200_000_000L) {
+        lastShown = now;
+        double secs = (now - start) * 1.0e-9;
+        String text = String.format("Read %d%s files, %.1f MB/s", nfiles, total >= 0 ? " / " + total : "",
+                bytesRead / 1.0e6 / secs);
+        int done = nfiles;
+        publish(() -> {
+          loadStatus.setText(text);
+          if (total > 0) {
+            loadProgress.setIndeterminate(false);
+            loadProgress.setMaximum(total);
+            loadProgress.setValue(Math.min(done, total));
+          }
+        });
+      }
+    }
+
+    @Override
+    protected void process(List<Runnable> updates) {
+      if (!isCancelled()) {
+        updates.forEach(Runnable::run);
+      }
+    }
+
+    @Override
+    protected void done() {
+      if (loader == this) {
+        loadPanel.setVisible(false);
+      }
+      if (!handedOver) {
+        closeQuietly(json); // cancelled or failed before the record was shown
+      }
+      if (json != null && (handedOver || !isCancelled())) {
+        // later reads of the panel's record don't report to this loader; an abandoned one keeps cancelling its reads
+        json.setReadListener(null);
+      }
+      if (isCancelled()) {
+        closeWatcher();
+        return;
+      }
+      try {
+        get();
+        if (loadWatcher != null && loader == this && watchRecord.isSelected()) {
+          watcher = loadWatcher;
+          watcher.start(ElectionRecordPanel.this::recordChanged);
+        } else {
+          closeWatcher();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (ExecutionException e) {
+        e.getCause().printStackTrace();
+        JOptionPane.showMessageDialog(null, e.getCause().getMessage());
+        closeWatcher();
+      }
+    }
+
+    private void closeWatcher() {
+      if (loadWatcher != null) {
+        loadWatcher.close();
       }
-      spoiledBallotsTable.setPlaintextTallies(record.manifest(), record.spoiledBallotTallies());
-    } catch (Exception e) {
-      e.printStackTrace();
-      JOptionPane.showMessageDialog(null, e.getMessage());
     }
-    return true;
   }
 
-  private class MyFilter {
-    public Boolean filter(electionguard.ballot.EncryptedBallot ballot) {
-      return true;
+  /** Watch the open record, if it is a JSON record and one is not being loaded. */
+  void startWatching() {
+    if (watcher != null || record == null || !recordIsJson || JsonElectionRecordPath.isZip(Path.of(electionRecordDir))
+            || (loader != null && !loader.isDone())) {
+      return;
+    }
+    try {
+      watcher = new RecordWatcher(electionRecordDir);
+      watcher.start(this::recordChanged);
+    } catch (IOException e) {
+      watcher = null;
+      JOptionPane.showMessageDialog(null, "Cannot watch " + electionRecordDir + ": " + e.getMessage());
+    }
+  }
+
+  void stopWatching() {
+    if (watcher != null) {
+      watcher.close();
+      watcher = null;
+    }
+  }
+
+  /** Called on the EDT with each batch of changes from the watcher. */
+  private void recordChanged(RecordWatcher.Changes changes) {
+    if (watcher == null) {
+      return; // stopped since the batch was read
+    }
+    if (changes.overflow()) {
+      setElectionRecord(electionRecordDir); // lost track, read it all again
+      return;
+    }
+    if (!changes.ballots().isEmpty()) {
+      submittedBallotsTable.updateBallots(changes.ballots());
+    }
+    if (!changes.spoiledBallotTallies().isEmpty()) {
+      spoiledBallotsTable.updatePlaintextTallies(changes.spoiledBallotTallies());
+    }
+    if (changes.encryptedTally() == null && changes.decryptedTally() == null) {
+      return;
+    }
+    ManifestIndex manifestIndex = ManifestIndex.of(record);
+    if (record instanceof ElectionRecordJson json) {
+      json.invalidate(); // so showInfo and verify see the new tallies
+    }
+    if (changes.encryptedTally() != null) {
+      ciphertextTallyTable.setCiphertextTally(changes.encryptedTally());
+    }
+    if (changes.decryptedTally() != null) {
+      plaintextTallyTable.clearTallies(manifestIndex);
+      plaintextTallyTable.addPlaintextTallies(List.of(changes.decryptedTally()));
     }
   }
 
@@ -211,8 +491,8 @@ class ElectionRecordPanel extends JPanel {
         f.format("    %10s %10d %10s%n", guardian.getGuardianId(), guardian.getXCoordinate(), guardian.getLagrangeCoordinate());
       }
 
-      f.format("%nEncryptedBallots %d%n", sizeof(record.encryptedBallots(null)));
-      f.format("SpoiledBallotTallies %d%n", sizeof(record.spoiledBallotTallies()));
+      f.format("%nEncryptedBallots %d%n", submittedBallotsTable.ballotCount());
+      f.format("SpoiledBallotTallies %d%n", spoiledBallotsTable.tallyCount());
 
       f.format("%nMetadata%n");
       f.format("ElectionConfig present = %s%n", record.config() != null);
@@ -234,24 +514,182 @@ class ElectionRecordPanel extends JPanel {
     }
   }
 
-  long sizeof(Iterable<?> iter) {
-    return StreamSupport.stream(iter.spliterator(), false).count();
+  void verify() {
+    if (record == null || (verifier != null && !verifier.isDone())) {
+      return;
+    }
+    verifier = new VerifyWorker(record, electionRecordDir, (Integer) verifyThreads.getValue(), verifyIncremental.isSelected());
+    verifier.execute();
   }
 
-  void verify(Formatter f) {
-    if (record == null) {
+  /** Runs a VerificationRun off the EDT, showing its progress, then the phase timings in the info window. */
+  private class VerifyWorker extends SwingWorker<Boolean, String> {
+    private final ElectionRecord verifyRecord;
+    private final String location;
+    private final int nthreads;
+    private final boolean incremental;
+    private final JsonElectionRecordPath hold = holdArchive(electionRecordDir);
+    private volatile VerificationRun run;
+
+    VerifyWorker(ElectionRecord verifyRecord, String location, int nthreads, boolean incremental) {
+      this.verifyRecord = verifyRecord;
+      this.location = location;
+      this.nthreads = nthreads;
+      this.incremental = incremental;
+      loadStatus.setText("Verifying with " + nthreads + " threads");
+      loadProgress.setIndeterminate(true);
+      cancelButton.setEnabled(true);
+      loadPanel.setVisible(true);
+    }
+
+    @Override
+    protected Boolean doInBackground() {
+      try {
+        // opening the ledger reads it, so do that here too
+        VerificationLedger ledger = incremental ? VerificationLedger.open(ledgerDir, location, verifyRecord) : null;
+        run = new VerificationRun(verifyRecord, nthreads, this::progress, ledger, null);
+        return run.run();
+      } finally {
+        closeQuietly(hold);
+      }
+    }
+
+    /** Called on the worker thread. */
+    private void progress(String phase, int done, int total, double perSecond) {
+      publish(total < 0 ? String.format("%s: %d, %.1f/s", phase, done, perSecond)
+              : String.format("%s: %d / %d", phase, done, total));
+    }
+
+    @Override
+    protected void process(List<String> messages) {
+      if (!isCancelled()) {
+        loadStatus.setText(messages.get(messages.size() - 1));
+      }
+    }
+
+    @Override
+    protected void done() {
+      if (verifier == this && (loader == null || loader.isDone())) {
+        loadPanel.setVisible(false);
+      }
+      Formatter f = new Formatter();
+      f.format(" Verify ElectionRecord from %s%n", verifyRecord.topdir());
+      try {
+        boolean ok = get();
+        f.format(" OK =  %s%n%n", ok);
+      } catch (CancellationException e) {
+        return; // the run may still be in the Verifier
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (ExecutionException e) {
+        f.format(" Failed: %s%n%n", e.getCause());
+      }
+      if (run != null) {
+        run.report(f);
+      }
+      ta.setText(f.toString());
+      infoWindow.show();
+    }
+  }
+
+  void retally() {
+    if (record == null || (retallier != null && !retallier.isDone())) {
       return;
     }
-    f.format(" Verify ElectionRecord from %s%n", this.record.topdir());
-    Verifier verifier = new Verifier(record, 11);
-    boolean ok = verifier.verify(true);
-    f.format(" OK =  %s%n", ok);
+    retallier = new ReTallyWorker(record, electionRecordDir, (Integer) verifyThreads.getValue());
+    retallier.execute();
+  }
+
+  /** Runs a ReTally off the EDT, with the verify threads, then shows the comparison in the info window. */
+  private class ReTallyWorker extends SwingWorker<String, Void> {
+    private final ElectionRecord retallyRecord;
+    private final String location;
+    private final int nthreads;
+    private final Path snapshots = snapshotDir();
+    private final JsonElectionRecordPath hold = holdArchive(electionRecordDir);
+
+    ReTallyWorker(ElectionRecord retallyRecord, String location, int nthreads) {
+      this.retallyRecord = retallyRecord;
+      this.location = location;
+      this.nthreads = nthreads;
+      loadStatus.setText("Re-tallying with " + nthreads + " threads");
+      loadProgress.setIndeterminate(true);
+      cancelButton.setEnabled(true);
+      loadPanel.setVisible(true);
+    }
+
+    @Override
+    protected String doInBackground() throws IOException, InterruptedException {
+      Formatter f = new Formatter();
+      f.format(" Re-tally ElectionRecord from %s%n", retallyRecord.topdir());
+      try (JsonConsumer json = new JsonConsumer(location, snapshots)) {
+        boolean ok = new ReTally(nthreads).check(retallyRecord, json.isValidElectionRecord(new Formatter()) ? json : null, f);
+        f.format(" OK =  %s%n", ok);
+      } finally {
+        closeQuietly(hold);
+      }
+      return f.toString();
+    }
+
+    @Override
+    protected void done() {
+      if (retallier == this && (loader == null || loader.isDone()) && (verifier == null || verifier.isDone())) {
+        loadPanel.setVisible(false);
+      }
+      try {
+        ta.setText(get());
+      } catch (CancellationException e) {
+        return;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (ExecutionException e) {
+        ta.setText(String.format(" Re-tally failed: %s%n", e.getCause()));
+      }
+      infoWindow.show();
+    }
+  }
+
+  /**
+   * Hold the zip the current record is read from open, so a worker can finish reading it after another record
+   * is loaded. Null if the record is not in a zip.
+   */
+  @Nullable
+  private static JsonElectionRecordPath holdArchive(String location) {
+    if (!JsonElectionRecordPath.isZip(Path.of(location))) {
+      return null;
+    }
+    try {
+      return JsonElectionRecordPath.of(location);
+    } catch (IOException e) {
+      return null;
+    }
   }
 
+  private static void closeQuietly(@Nullable Closeable closeable) {
+    if (closeable != null) {
+      try {
+        closeable.close();
+      } catch (IOException e) {
+        // nothing more to release
+      }
+    }
+  }
+
+  /** The snapshot directory, or null if snapshots are turned off. */
+  @Nullable
+  Path snapshotDir() {
+    return useSnapshots.isSelected() ? snapshotDir : null;
+  }
 
   void save() {
     fileChooser.save();
     electionRecordDirCB.save();
+    prefs.putInt("verifyThreads", (Integer) verifyThreads.getValue());
+    prefs.putBoolean("verifyIncremental", verifyIncremental.isSelected());
+    prefs.putBoolean("watchRecord", watchRecord.isSelected());
+    prefs.putBoolean("useSnapshots", useSnapshots.isSelected());
 
     manifestTable.save();
     submittedBallotsTable.save();
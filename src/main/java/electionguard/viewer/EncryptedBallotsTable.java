@@ -7,6 +7,8 @@ package electionguard.viewer;
 
 import electionguard.ballot.Manifest;
 import electionguard.ballot.EncryptedBallot;
+import electionguard.json.BallotIndex;
+import electionguard.json.ManifestIndex;
 import electionguard.publish.ElectionRecord;
 import ucar.ui.prefs.BeanTable;
 import ucar.ui.widget.BAMutil;
@@ -14,26 +16,34 @@ import ucar.ui.widget.IndependentWindow;
 import ucar.ui.widget.TextHistoryPane;
 import ucar.util.prefs.PreferencesExt;
 
+import javax.annotation.Nullable;
 import javax.swing.*;
 import java.awt.*;
 import java.time.Instant;
 import java.time.OffsetDateTime;
 import java.time.ZoneId;
 import java.util.ArrayList;
-import java.util.Optional;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
 
 public class EncryptedBallotsTable extends JPanel {
   private final PreferencesExt prefs;
 
-  private final BeanTable<SubmittedBallotBean> ballotTable;
+  private final VirtualBeanTable<BallotIndex.Entry, SubmittedBallotBean> ballotTable;
   private final BeanTable<ContestBean> contestTable;
   private final BeanTable<SelectionBean> selectionTable;
 
   private final JSplitPane split1, split2;
   private final IndependentWindow infoWindow;
 
-  private Manifest manifest;
+  private ManifestIndex manifestIndex;
   private ElectionRecord context;
+  // the ballots are only held here when there is no way to read them again by id
+  private final Map<String, EncryptedBallot> retained = new HashMap<>();
+  private boolean retainBallots;
+  private Function<String, EncryptedBallot> loader = retained::get;
 
   public EncryptedBallotsTable(PreferencesExt prefs) {
     this.prefs = prefs;
@@ -41,8 +51,8 @@ public class EncryptedBallotsTable extends JPanel {
     infoWindow = new IndependentWindow("Extra Information", BAMutil.getImage("electionguard-logo.png"), infoTA);
     infoWindow.setBounds((Rectangle) prefs.getBean("InfoWindowBounds", new Rectangle(300, 300, 800, 100)));
 
-    ballotTable = new BeanTable<>(SubmittedBallotBean.class, (PreferencesExt) prefs.node("BallotTable"), false,
-            "SubmittedBallot", "encrypted_ballots", null);
+    ballotTable = new VirtualBeanTable<>(SubmittedBallotBean.class, (PreferencesExt) prefs.node("BallotTable"),
+            "SubmittedBallot", "encrypted_ballots", entry -> new SubmittedBallotBean(entry, this::loadBallot));
     ballotTable.addListSelectionListener(e -> {
       SubmittedBallotBean ballot = ballotTable.getSelectedBean();
       if (ballot != null) {
@@ -50,7 +60,7 @@ public class EncryptedBallotsTable extends JPanel {
       }
     });
     ballotTable.addPopupOption("Show Ballot", ballotTable.makeShowAction(infoTA, infoWindow,
-            bean -> ((SubmittedBallotBean)bean).ballot.toString()));
+            bean -> String.valueOf(((SubmittedBallotBean)bean).ballot())));
     // ballotTable.addPopupOption("Compute Ballot Size", ballotTable.makeShowAction(infoTA, infoWindow,
     //        bean -> computeBallotSize(((SubmittedBallotBean)bean).ballot)));
 
@@ -81,25 +91,87 @@ public class EncryptedBallotsTable extends JPanel {
     add(split2, BorderLayout.CENTER);
   }
 
-  void setAcceptedBallots(ElectionRecord record, Iterable<EncryptedBallot> acceptedBallots) {
-    this.manifest = record.manifest();
-    this.context = context;
-    java.util.List<SubmittedBallotBean> beanList = new ArrayList<>();
-    for (EncryptedBallot ballot : acceptedBallots) {
-      beanList.add(new SubmittedBallotBean(ballot));
-    }
-      ballotTable.setBeans(beanList);
-      if (beanList.size() > 0) {
-        setBallot(beanList.get(0));
-      } else {
-        contestTable.setBeans(new ArrayList<>());
-        selectionTable.setBeans(new ArrayList<>());
+  /**
+   * Clear the table, before ballots are added in batches with addBallots.
+   * If loader is null, the ballots are kept in memory, otherwise only their index entries are kept,
+   * and a ballot is read with the loader when it is selected.
+   */
+  void clearBallots(ManifestIndex manifestIndex, @Nullable Function<String, EncryptedBallot> loader) {
+    this.manifestIndex = manifestIndex;
+    this.retained.clear();
+    this.retainBallots = loader == null;
+    this.loader = loader != null ? loader : retained::get;
+    ballotTable.setRows(new ArrayList<>());
+    contestTable.setBeans(new ArrayList<>());
+    selectionTable.setBeans(new ArrayList<>());
+  }
+
+  void addBallots(java.util.List<EncryptedBallot> ballots) {
+    boolean first = ballotTable.rowCount() == 0;
+    java.util.List<BallotIndex.Entry> entries = new ArrayList<>(ballots.size());
+    for (EncryptedBallot ballot : ballots) {
+      entries.add(BallotIndex.Entry.of(ballot, -1));
+      if (retainBallots) {
+        retained.put(ballot.getBallotId(), ballot);
       }
+    }
+    ballotTable.addRows(entries);
+    if (first && !entries.isEmpty()) {
+      setBallot(ballotTable.bean(0));
+    }
+  }
+
+  /**
+   * Add ballots that have arrived since the table was filled, replacing any row with the same ballot id.
+   * These ballots are kept in memory, since they are not in the ballot index.
+   */
+  void updateBallots(java.util.List<EncryptedBallot> ballots) {
+    boolean first = ballotTable.rowCount() == 0;
+    java.util.List<BallotIndex.Entry> entries = new ArrayList<>(ballots.size());
+    for (EncryptedBallot ballot : ballots) {
+      entries.add(BallotIndex.Entry.of(ballot, -1));
+      retained.put(ballot.getBallotId(), ballot);
+    }
+    ballotTable.updateRows(entries, BallotIndex.Entry::ballotId);
+    if (first && !entries.isEmpty()) {
+      setBallot(ballotTable.bean(0));
+    }
+  }
+
+  @Nullable
+  private EncryptedBallot loadBallot(String ballotId) {
+    EncryptedBallot ballot = retained.get(ballotId);
+    return ballot != null ? ballot : loader.apply(ballotId);
+  }
+
+  int ballotCount() {
+    return ballotTable.rowCount();
+  }
+
+  /** Show the ballots in the index, reading a ballot from the store only when it is selected. */
+  void setBallotIndex(ElectionRecord record, BallotIndex index, Function<String, EncryptedBallot> loader) {
+    this.manifestIndex = ManifestIndex.of(record);
+    this.retained.clear();
+    this.retainBallots = false;
+    this.loader = loader;
+    ballotTable.setRows(index.entries());
+    if (index.size() > 0) {
+      setBallot(ballotTable.bean(0));
+    } else {
+      contestTable.setBeans(new ArrayList<>());
+      selectionTable.setBeans(new ArrayList<>());
+    }
   }
 
   void setBallot(SubmittedBallotBean ballotBean) {
     java.util.List<ContestBean> beanList = new ArrayList<>();
-    for (EncryptedBallot.Contest c : ballotBean.ballot.getContests()) {
+    EncryptedBallot ballot = ballotBean.ballot();
+    if (ballot == null) {
+      contestTable.setBeans(beanList);
+      selectionTable.setBeans(new ArrayList<>());
+      return;
+    }
+    for (EncryptedBallot.Contest c : ballot.getContests()) {
       beanList.add(new ContestBean(c));
     }
     contestTable.setBeans(beanList);
@@ -201,36 +273,58 @@ public class EncryptedBallotsTable extends JPanel {
   } */
 
   public static class SubmittedBallotBean {
-    EncryptedBallot ballot;
+    // the ballot is only read when needed, and then kept, with the formatted values, while the bean is in the window
+    BallotIndex.Entry entry;
+    Function<String, EncryptedBallot> loader;
+    private EncryptedBallot ballot;
+    private String code, codeSeed, timeStamp;
 
     public SubmittedBallotBean(){}
 
-    SubmittedBallotBean(EncryptedBallot ballot) {
-      this.ballot = ballot;
+    SubmittedBallotBean(BallotIndex.Entry entry, Function<String, EncryptedBallot> loader) {
+      this.entry = entry;
+      this.loader = loader;
+    }
+
+    @Nullable
+    EncryptedBallot ballot() {
+      if (ballot == null) {
+        ballot = loader.apply(entry.ballotId());
+      }
+      return ballot;
     }
 
     public String getId() {
-      return ballot.getBallotId();
+      return entry.ballotId();
     }
 
     public String getCode() {
-      return ballot.getCode().toString();
+      if (code == null) {
+        code = String.valueOf(entry.code());
+      }
+      return code;
     }
 
     public String getCodeSeed() {
-      return ballot.getCodeSeed().toString();
+      if (codeSeed == null) {
+        codeSeed = String.valueOf(entry.codeSeed());
+      }
+      return codeSeed;
     }
 
     public String getState() {
-      return ballot.getState().toString();
+      return String.valueOf(entry.state());
     }
 
     public String getStyle() {
-      return ballot.getBallotStyleId();
+      return entry.styleId();
     }
 
     public String getTimeStamp() {
-      return OffsetDateTime.ofInstant(Instant.ofEpochSecond(ballot.getTimestamp()), ZoneId.of("UTC")).toString();
+      if (timeStamp == null) {
+        timeStamp = OffsetDateTime.ofInstant(Instant.ofEpochSecond(entry.timestamp()), ZoneId.of("UTC")).toString();
+      }
+      return timeStamp;
     }
   }
 
@@ -242,7 +336,10 @@ public class EncryptedBallotsTable extends JPanel {
 
     ContestBean(EncryptedBallot.Contest contest) {
       this.contest = contest;
-      this.mcontest = manifest.getContests().stream().filter(it -> it.getContestId().equals(contest.getContestId())).findFirst().orElseThrow();
+      this.mcontest = manifestIndex.contest(contest.getContestId());
+      if (this.mcontest == null) {
+        throw new NoSuchElementException("Manifest has no contest " + contest.getContestId());
+      }
     }
 
     public String getContestId() {
@@ -280,13 +377,8 @@ public class EncryptedBallotsTable extends JPanel {
 
     SelectionBean(EncryptedBallot.Selection selection, ContestBean contestBean) {
       this.selection = selection;
-      Optional<Manifest.SelectionDescription> match = contestBean.mcontest.getSelections().stream().filter(it -> it.getSelectionId().equals(selection.getSelectionId())).findFirst();
-      if (match.isPresent()) {
-        this.mselection = match.get();
-      } else {
-        java.util.List<String> list = contestBean.mcontest.getSelections().stream().map(it -> it.getSelectionId()).toList();
-        // System.out.printf("Looking for %s in %s%n", selection.getSelectionId(), list);
-      }
+      // placeholder selections are not in the manifest, and mselection stays null
+      this.mselection = manifestIndex.selection(contestBean.mcontest.getContestId(), selection.getSelectionId());
     }
 
     public String getSelectionId() {
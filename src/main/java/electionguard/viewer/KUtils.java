@@ -4,11 +4,69 @@ import electionguard.core.GroupContext;
 import electionguard.core.PowRadixOption;
 import electionguard.core.ProductionMode;
 
+import javax.annotation.Nullable;
+
 
 public class KUtils {
+  /** System property that chooses the PowRadixOption: LOW_MEMORY_USE, HIGH_MEMORY_USE or EXTREME_MEMORY_USE. */
+  public static final String POW_RADIX_PROPERTY = "electionguard.powRadix";
+
+  private static PowRadixOption powRadixOption;
+  private static volatile GroupContext group;
 
+  /** The GroupContext shared by the whole process, made on first use, so the PowRadix tables are only built once. */
   public static GroupContext productionGroup() {
-    return electionguard.core.GroupKt.productionGroup(PowRadixOption.LOW_MEMORY_USE, ProductionMode.Mode4096);
+    GroupContext result = group;
+    if (result == null) {
+      synchronized (KUtils.class) {
+        result = group;
+        if (result == null) {
+          result = electionguard.core.GroupKt.productionGroup(powRadixOption(), ProductionMode.Mode4096);
+          group = result;
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Choose the PowRadixOption of the shared GroupContext. Must be called before the first productionGroup(),
+   * and return false if it is too late. The system property still takes precedence.
+   */
+  public static synchronized boolean setPowRadixOption(PowRadixOption option) {
+    if (group != null) {
+      return false;
+    }
+    powRadixOption = option;
+    return true;
+  }
+
+  /** The system property if set, else the option set with setPowRadixOption, else one that fits the max heap. */
+  public static synchronized PowRadixOption powRadixOption() {
+    PowRadixOption chosen = chosenPowRadixOption();
+    return chosen != null ? chosen : forHeap(Runtime.getRuntime().maxMemory());
+  }
+
+  /** The system property if set, else the option set with setPowRadixOption, else null if neither was chosen. */
+  @Nullable
+  public static synchronized PowRadixOption chosenPowRadixOption() {
+    String property = System.getProperty(POW_RADIX_PROPERTY);
+    if (property != null) {
+      return PowRadixOption.valueOf(property.trim().toUpperCase());
+    }
+    return powRadixOption;
+  }
+
+  /** The tables for g take about 4 MB with LOW, 50 MB with HIGH and 500 MB with EXTREME. */
+  static PowRadixOption forHeap(long maxHeap) {
+    long mbytes = maxHeap / (1024 * 1024);
+    if (mbytes >= 8 * 1024) {
+      return PowRadixOption.EXTREME_MEMORY_USE;
+    }
+    if (mbytes >= 1024) {
+      return PowRadixOption.HIGH_MEMORY_USE;
+    }
+    return PowRadixOption.LOW_MEMORY_USE;
   }
 
 }
@@ -7,6 +7,7 @@ package electionguard.viewer;
 
 import electionguard.ballot.Manifest;
 import electionguard.ballot.PlaintextTally;
+import electionguard.json.ManifestIndex;
 import ucar.ui.prefs.BeanTable;
 import ucar.ui.widget.BAMutil;
 import ucar.ui.widget.IndependentWindow;
@@ -18,6 +19,9 @@ import java.awt.*;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Formatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
 
 public class PlaintextTallyTable extends JPanel {
   private final PreferencesExt prefs;
@@ -31,7 +35,7 @@ public class PlaintextTallyTable extends JPanel {
 
   private final IndependentWindow infoWindow;
 
-  private Manifest manifest;
+  private ManifestIndex manifestIndex;
 
   public PlaintextTallyTable(PreferencesExt prefs) {
     this.prefs = prefs;
@@ -77,8 +81,8 @@ public class PlaintextTallyTable extends JPanel {
     add(split2, BorderLayout.CENTER);
   }
 
-  void setPlaintextTallies(Manifest manifest, Iterable<PlaintextTally> tallies) {
-    this.manifest = manifest;
+  void setPlaintextTallies(ManifestIndex manifestIndex, Iterable<PlaintextTally> tallies) {
+    this.manifestIndex = manifestIndex;
     java.util.List<PlaintextTallyBean> beanList = new ArrayList<>();
     for (PlaintextTally tally: tallies) {
         beanList.add(new PlaintextTallyBean(tally));
@@ -92,6 +96,56 @@ public class PlaintextTallyTable extends JPanel {
       }
   }
 
+  /** Clear the table, before tallies are added in batches with addPlaintextTallies. */
+  void clearTallies(ManifestIndex manifestIndex) {
+    this.manifestIndex = manifestIndex;
+    tallyTable.setBeans(new ArrayList<>());
+    contestTable.setBeans(new ArrayList<>());
+    selectionTable.setBeans(new ArrayList<>());
+  }
+
+  void addPlaintextTallies(java.util.List<PlaintextTally> tallies) {
+    boolean first = tallyTable.getBeans().isEmpty();
+    java.util.List<PlaintextTallyBean> beanList = new ArrayList<>(tallies.size());
+    for (PlaintextTally tally : tallies) {
+      beanList.add(new PlaintextTallyBean(tally));
+    }
+    tallyTable.addBeans(beanList);
+    if (first && beanList.size() > 0) {
+      setTally(beanList.get(0));
+    }
+  }
+
+  /** Add tallies that have arrived since the table was filled, replacing any row with the same tally id. */
+  void updatePlaintextTallies(java.util.List<PlaintextTally> tallies) {
+    Map<String, PlaintextTallyBean> updates = new LinkedHashMap<>();
+    for (PlaintextTally tally : tallies) {
+      updates.put(tally.getTallyId(), new PlaintextTallyBean(tally));
+    }
+    boolean first = tallyTable.getBeans().isEmpty();
+    PlaintextTallyBean selected = tallyTable.getSelectedBean();
+    java.util.List<PlaintextTallyBean> beanList = new ArrayList<>(tallyTable.getBeans().size() + updates.size());
+    for (PlaintextTallyBean bean : tallyTable.getBeans()) {
+      PlaintextTallyBean update = updates.remove(bean.tally.getTallyId());
+      beanList.add(update != null ? update : bean);
+    }
+    beanList.addAll(updates.values());
+    tallyTable.setBeans(beanList);
+
+    PlaintextTallyBean reselect = selected == null ? null : beanList.stream()
+            .filter(bean -> bean.tally.getTallyId().equals(selected.tally.getTallyId())).findFirst().orElse(null);
+    if (reselect != null) {
+      tallyTable.setSelectedBean(reselect);
+      setTally(reselect);
+    } else if (first && !beanList.isEmpty()) {
+      setTally(beanList.get(0));
+    }
+  }
+
+  int tallyCount() {
+    return tallyTable.getBeans().size();
+  }
+
   void setTally(PlaintextTallyBean plaintextTallyBean) {
     java.util.List<ContestBean> beanList = new ArrayList<>();
     for (PlaintextTally.Contest c : plaintextTallyBean.tally.getContests().values()) {
@@ -145,7 +199,10 @@ public class PlaintextTallyTable extends JPanel {
 
     ContestBean(PlaintextTally.Contest contest) {
       this.contest = contest;
-      this.mcontest = manifest.getContests().stream().filter(it -> it.getContestId().equals(contest.getContestId())).findFirst().orElseThrow();
+      this.mcontest = manifestIndex.contest(contest.getContestId());
+      if (this.mcontest == null) {
+        throw new NoSuchElementException("Manifest has no contest " + contest.getContestId());
+      }
 
       for (PlaintextTally.Selection s : contest.getSelections().values()) {
         selectionBeans.add(new SelectionBean(s, mcontest));
@@ -197,7 +254,10 @@ public class PlaintextTallyTable extends JPanel {
 
     SelectionBean(PlaintextTally.Selection selection, Manifest.ContestDescription mcontest) {
       this.selection = selection;
-      this.mselection = mcontest.getSelections().stream().filter(it -> it.getSelectionId().equals(selection.getSelectionId())).findFirst().orElseThrow();
+      this.mselection = manifestIndex.selection(mcontest.getContestId(), selection.getSelectionId());
+      if (this.mselection == null) {
+        throw new NoSuchElementException("Manifest contest " + mcontest.getContestId() + " has no selection " + selection.getSelectionId());
+      }
     }
 
     public String getSelectionId() {
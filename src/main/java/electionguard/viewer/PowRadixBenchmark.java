@@ -0,0 +1,68 @@
+package electionguard.viewer;
+
+import electionguard.core.ElementModQ;
+import electionguard.core.GroupContext;
+import electionguard.core.PowRadixOption;
+import electionguard.core.ProductionMode;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Formatter;
+import java.util.List;
+
+/**
+ * Times g^e with each PowRadixOption, against no acceleration, and the approximate heap used by its tables,
+ * so the option can be chosen for a machine. Makes its own GroupContexts, not the shared one.
+ * Run at startup with VerifyMain -benchmarkPowRadix, or on its own.
+ */
+public class PowRadixBenchmark {
+  private static final int NEXPS = 200;
+
+  public static void main(String[] args) {
+    Formatter f = new Formatter();
+    run(f);
+    System.out.print(f);
+  }
+
+  public static void run(Formatter f) {
+    List<byte[]> exponents = new ArrayList<>(NEXPS);
+    SecureRandom random = new SecureRandom();
+    for (int i = 0; i < NEXPS; i++) {
+      byte[] bytes = new byte[31]; // always less than q
+      random.nextBytes(bytes);
+      exponents.add(bytes);
+    }
+
+    f.format("PowRadix benchmark, %d exponentiations of g, max heap %d MB%n", NEXPS,
+            Runtime.getRuntime().maxMemory() / (1024 * 1024));
+    f.format(" %-20s %12s %12s %12s %10s%n", "option", "tables MB", "build msecs", "usecs/exp", "speedup");
+    double baseline = 0;
+    for (PowRadixOption option : PowRadixOption.values()) {
+      long before = usedHeap();
+      long start = System.nanoTime();
+      GroupContext group = electionguard.core.GroupKt.productionGroup(option, ProductionMode.Mode4096);
+      List<ElementModQ> exps = exponents.stream().map(group::binaryToElementModQ).toList();
+      group.gPowP(exps.get(0)); // builds the tables if they are lazy
+      long build = System.nanoTime() - start;
+      long tables = usedHeap() - before;
+
+      start = System.nanoTime();
+      for (ElementModQ exp : exps) {
+        group.gPowP(exp);
+      }
+      double usecs = (System.nanoTime() - start) / 1000.0 / NEXPS;
+      if (option == PowRadixOption.NO_ACCELERATION) {
+        baseline = usecs;
+      }
+      f.format(" %-20s %12.1f %12.1f %12.1f %10s%n", option, Math.max(0, tables) / 1.0e6, build / 1.0e6, usecs,
+              baseline > 0 ? String.format("%.1f", baseline / usecs) : "");
+    }
+    f.format(" chosen for this process: %s%n", KUtils.powRadixOption());
+  }
+
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    System.gc();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
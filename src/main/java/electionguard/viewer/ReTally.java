@@ -0,0 +1,300 @@
+package electionguard.viewer;
+
+import electionguard.ballot.EncryptedBallot;
+import electionguard.ballot.EncryptedTally;
+import electionguard.core.ElGamalCiphertext;
+import electionguard.core.ElementModP;
+import electionguard.core.UInt256;
+import electionguard.json.JsonConsumer;
+import electionguard.json.TarGzRecord;
+import electionguard.publish.ElectionRecord;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Formatter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.StreamSupport;
+
+/**
+ * Recomputes the encrypted tally as the product of the ciphertexts of all CAST ballots, per (contest, selection),
+ * and compares it to the EncryptedTally in the record. Each thread accumulates its own partial tally,
+ * and the partials are multiplied together at the end.
+ */
+public class ReTally {
+
+  /** A (contest, selection) where the recomputed tally differs from the record. */
+  public record Mismatch(String contestId, String selectionId, String problem) {}
+
+  /** Running product of ciphertexts per contest and selection. Not thread safe, use one per thread and merge. */
+  public static class Accumulator {
+    private final Map<String, ContestSum> sums = new HashMap<>();
+    private int nballots;
+
+    /** Add the ciphertexts of a ballot, if it is CAST. Placeholder selections are not tallied. */
+    public void add(EncryptedBallot ballot) {
+      if (ballot.getState() != EncryptedBallot.BallotState.CAST) {
+        return;
+      }
+      for (EncryptedBallot.Contest contest : ballot.getContests()) {
+        ContestSum contestSum = sums.computeIfAbsent(contest.getContestId(),
+                k -> new ContestSum(contest.getSequenceOrder(), contest.getContestHash()));
+        for (EncryptedBallot.Selection selection : contest.getSelections()) {
+          if (!selection.isPlaceholderSelection()) {
+            contestSum.add(selection.getSelectionId(), selection.getSequenceOrder(), selection.getSelectionHash(),
+                    selection.getCiphertext());
+          }
+        }
+      }
+      nballots++;
+    }
+
+    /** Multiply another partial tally into this one. */
+    public Accumulator merge(Accumulator other) {
+      other.sums.forEach((contestId, otherSum) -> {
+        ContestSum contestSum = sums.computeIfAbsent(contestId, k -> new ContestSum(otherSum.sequenceOrder, otherSum.hash));
+        otherSum.selections.forEach((selectionId, s) -> contestSum.add(selectionId, s.sequenceOrder, s.hash, s.text));
+      });
+      nballots += other.nballots;
+      return this;
+    }
+
+    /** Multiply in a partial tally of partialBallots ballots that was written out as an EncryptedTally. */
+    public void merge(EncryptedTally partial, int partialBallots) {
+      for (EncryptedTally.Contest contest : partial.getContests()) {
+        ContestSum contestSum = sums.computeIfAbsent(contest.getContestId(),
+                k -> new ContestSum(contest.getSequenceOrder(), contest.getContestDescriptionHash()));
+        for (EncryptedTally.Selection selection : contest.getSelections()) {
+          contestSum.add(selection.getSelectionId(), selection.getSequenceOrder(),
+                  selection.getSelectionDescriptionHash(), selection.getCiphertext());
+        }
+      }
+      nballots += partialBallots;
+    }
+
+    public int nballots() {
+      return nballots;
+    }
+
+    @Nullable
+    public ElGamalCiphertext get(String contestId, String selectionId) {
+      ContestSum contestSum = sums.get(contestId);
+      SelectionSum selectionSum = contestSum == null ? null : contestSum.selections.get(selectionId);
+      return selectionSum == null ? null : selectionSum.text;
+    }
+
+    /** The accumulated tally, with the sequence orders and description hashes of the ballots. */
+    public EncryptedTally toTally(String tallyId) {
+      List<EncryptedTally.Contest> contests = new ArrayList<>();
+      sums.forEach((contestId, contestSum) -> {
+        List<EncryptedTally.Selection> selections = new ArrayList<>();
+        contestSum.selections.forEach((selectionId, s) ->
+                selections.add(new EncryptedTally.Selection(selectionId, s.sequenceOrder, s.hash, s.text)));
+        contests.add(new EncryptedTally.Contest(contestId, contestSum.sequenceOrder, contestSum.hash, selections));
+      });
+      return new EncryptedTally(tallyId, contests);
+    }
+  }
+
+  private static class ContestSum {
+    final int sequenceOrder;
+    final UInt256 hash;
+    final Map<String, SelectionSum> selections = new HashMap<>();
+
+    ContestSum(int sequenceOrder, UInt256 hash) {
+      this.sequenceOrder = sequenceOrder;
+      this.hash = hash;
+    }
+
+    void add(String selectionId, int sequenceOrder, UInt256 hash, ElGamalCiphertext text) {
+      SelectionSum sum = selections.get(selectionId);
+      if (sum == null) {
+        selections.put(selectionId, new SelectionSum(sequenceOrder, hash, text));
+      } else {
+        sum.text = multiply(sum.text, text);
+      }
+    }
+  }
+
+  private static class SelectionSum {
+    final int sequenceOrder;
+    final UInt256 hash;
+    ElGamalCiphertext text;
+
+    SelectionSum(int sequenceOrder, UInt256 hash, ElGamalCiphertext text) {
+      this.sequenceOrder = sequenceOrder;
+      this.hash = hash;
+      this.text = text;
+    }
+  }
+
+  private final int nthreads;
+  private long nanos;
+  private int nballots;
+
+  public ReTally(int nthreads) {
+    this.nthreads = Math.max(1, nthreads);
+  }
+
+  /**
+   * Accumulate the CAST ballots of a record. With a JsonConsumer, the ballot files are parsed in parallel,
+   * else the record's ballots are read in order and accumulated in parallel.
+   */
+  public Accumulator accumulate(ElectionRecord record, @Nullable JsonConsumer json) throws InterruptedException {
+    long start = System.nanoTime();
+    Accumulator result;
+    if (json != null) {
+      Map<Thread, Accumulator> partials = new ConcurrentHashMap<>();
+      json.readEncryptedBallots(nthreads,
+              ballot -> partials.computeIfAbsent(Thread.currentThread(), t -> new Accumulator()).add(ballot));
+      result = mergeAll(partials.values());
+    } else {
+      Iterable<EncryptedBallot> ballots = record.encryptedBallots(null);
+      result = runInPool(() -> StreamSupport.stream(Spliterators.spliteratorUnknownSize(ballots.iterator(), 0), true)
+              .collect(Accumulator::new, Accumulator::add, Accumulator::merge));
+    }
+    finish(start, result);
+    return result;
+  }
+
+  /** Accumulate the CAST ballots in these JSON ballot files, one shard of a record, which may be in a zip. */
+  public Accumulator accumulate(List<Path> ballotFiles) throws InterruptedException {
+    long start = System.nanoTime();
+    Accumulator result = runInPool(() -> ballotFiles.parallelStream()
+            .map(JsonConsumer::readEncryptedBallot)
+            .filter(ballot -> ballot != null)
+            .collect(Accumulator::new, Accumulator::add, Accumulator::merge));
+    finish(start, result);
+    return result;
+  }
+
+  /**
+   * Accumulate the CAST ballots of a .tar.gz record in one streaming pass, see TarGzRecord,
+   * and return the archive's encrypted tally with them.
+   */
+  public TarGzTally accumulate(Path archive) throws IOException, InterruptedException {
+    long start = System.nanoTime();
+    Map<Thread, Accumulator> partials = new ConcurrentHashMap<>();
+    TarGzRecord.Contents contents = TarGzRecord.readEncryptedBallots(archive, nthreads,
+            ballot -> partials.computeIfAbsent(Thread.currentThread(), t -> new Accumulator()).add(ballot));
+    Accumulator result = mergeAll(partials.values());
+    finish(start, result);
+    return new TarGzTally(contents.encryptedTally(), result);
+  }
+
+  /** The encrypted tally of a .tar.gz record, null if it has none, and the re-tally of its ballots. */
+  public record TarGzTally(@Nullable EncryptedTally expected, Accumulator actual) {}
+
+  private void finish(long start, Accumulator result) {
+    nanos = System.nanoTime() - start;
+    nballots = result.nballots();
+  }
+
+  private <T> T runInPool(Callable<T> task) throws InterruptedException {
+    ForkJoinPool pool = new ForkJoinPool(nthreads);
+    try {
+      return pool.submit(task).get();
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Failed accumulating ballots", e.getCause());
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  private static Accumulator mergeAll(Collection<Accumulator> partials) {
+    Accumulator result = new Accumulator();
+    partials.forEach(result::merge);
+    return result;
+  }
+
+  private static ElGamalCiphertext multiply(ElGamalCiphertext a, ElGamalCiphertext b) {
+    return new ElGamalCiphertext(a.getPad().times(b.getPad()), a.getData().times(b.getData()));
+  }
+
+  private static boolean isOne(ElGamalCiphertext text) {
+    return isOne(text.getPad()) && isOne(text.getData());
+  }
+
+  private static boolean isOne(ElementModP element) {
+    return new BigInteger(1, element.byteArray()).equals(BigInteger.ONE);
+  }
+
+  /**
+   * Compare the recomputed tally to the record's, in both directions. A selection in the record's tally that
+   * is on no CAST ballot matches if its ciphertext is (1, 1), the encryption of zero with nonce zero.
+   */
+  public static List<Mismatch> compare(EncryptedTally expected, Accumulator actual) {
+    List<Mismatch> result = new ArrayList<>();
+    Map<String, Map<String, Boolean>> seen = new HashMap<>();
+    for (EncryptedTally.Contest contest : expected.getContests()) {
+      for (EncryptedTally.Selection selection : contest.getSelections()) {
+        seen.computeIfAbsent(contest.getContestId(), k -> new HashMap<>()).put(selection.getSelectionId(), true);
+        ElGamalCiphertext computed = actual.get(contest.getContestId(), selection.getSelectionId());
+        if (computed == null) {
+          // no CAST ballot has the selection, so its tally is the product of no ciphertexts, (1, 1)
+          if (!isOne(selection.getCiphertext())) {
+            result.add(new Mismatch(contest.getContestId(), selection.getSelectionId(),
+                    "not in any CAST ballot, but not an encryption of zero"));
+          }
+        } else if (!computed.equals(selection.getCiphertext())) {
+          result.add(new Mismatch(contest.getContestId(), selection.getSelectionId(), "ciphertext differs"));
+        }
+      }
+    }
+    actual.sums.forEach((contestId, contestSum) -> contestSum.selections.keySet().forEach(selectionId -> {
+      if (!seen.getOrDefault(contestId, Map.of()).containsKey(selectionId)) {
+        result.add(new Mismatch(contestId, selectionId, "not in the encrypted tally"));
+      }
+    }));
+    return result;
+  }
+
+  public double ballotsPerSecond() {
+    return nanos == 0 ? 0.0 : nballots / (nanos * 1.0e-9);
+  }
+
+  /** Re-tally a record and write the comparison. Return true if it matches. */
+  public boolean check(ElectionRecord record, @Nullable JsonConsumer json, Formatter f) throws InterruptedException {
+    EncryptedTally expected = record.encryptedTally();
+    if (expected == null) {
+      f.format(" No encrypted tally in the record%n");
+      return false;
+    }
+    return report(expected, accumulate(record, json), f);
+  }
+
+  /** Re-tally a .tar.gz record and write the comparison. Return true if it matches. */
+  public boolean check(Path archive, Formatter f) throws IOException, InterruptedException {
+    TarGzTally tally = accumulate(archive);
+    if (tally.expected() == null) {
+      f.format(" No encrypted tally in the archive%n");
+      return false;
+    }
+    return report(tally.expected(), tally.actual(), f);
+  }
+
+  private boolean report(EncryptedTally expected, Accumulator actual, Formatter f) {
+    List<Mismatch> mismatches = compare(expected, actual);
+    f.format(" Re-tally of %d CAST ballots with %d threads: %.3f secs, %.1f ballots/s%n",
+            nballots, nthreads, nanos * 1.0e-9, ballotsPerSecond());
+    if (mismatches.isEmpty()) {
+      f.format(" matches the encrypted tally%n");
+    } else {
+      f.format(" %d mismatches with the encrypted tally%n", mismatches.size());
+      for (Mismatch mismatch : mismatches) {
+        f.format("  %s / %s: %s%n", mismatch.contestId(), mismatch.selectionId(), mismatch.problem());
+      }
+    }
+    return mismatches.isEmpty();
+  }
+}
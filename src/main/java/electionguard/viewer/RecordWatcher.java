@@ -0,0 +1,239 @@
+package electionguard.viewer;
+
+import com.google.common.flogger.FluentLogger;
+import electionguard.ballot.EncryptedBallot;
+import electionguard.ballot.EncryptedTally;
+import electionguard.ballot.PlaintextTally;
+import electionguard.json.JsonConsumer;
+import electionguard.json.JsonElectionRecordPath;
+
+import javax.annotation.Nullable;
+import javax.swing.*;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Watches the directories of an open JSON election record, and reads only the ballot, spoiled ballot and tally
+ * files that are created or modified. Changes are collected until the record has been quiet for QUIET_MS, or at most
+ * MAX_DELAY_MS, then read off the EDT and handed to the listener on the EDT as one Changes, so a burst of
+ * thousands of files is a few table updates, not thousands.
+ * <p>
+ * The directories are registered when the watcher is made, so files that arrive while the record is being loaded
+ * are not missed; they may be seen twice, so the listener should replace ballots by id.
+ */
+class RecordWatcher implements Closeable {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+  static final long QUIET_MS = 500;
+  static final long MAX_DELAY_MS = 2000;
+
+  /**
+   * One batch of changes. The tallies are null unless their file changed.
+   * If overflow, the watch service lost events, and the record should be read again.
+   */
+  record Changes(List<EncryptedBallot> ballots, List<PlaintextTally> spoiledBallotTallies,
+                 @Nullable EncryptedTally encryptedTally, @Nullable PlaintextTally decryptedTally, boolean overflow) {}
+
+  private final JsonElectionRecordPath paths;
+  private final JsonConsumer consumer;
+  private final WatchService watchService;
+  private final Map<WatchKey, Path> watched = new HashMap<>();
+
+  // only used by the watch thread
+  private final Set<Path> changedBallots = new LinkedHashSet<>();
+  private final Set<Path> changedSpoiled = new LinkedHashSet<>();
+  private boolean encryptedTallyChanged, tallyChanged, overflow;
+  private long firstChange;
+
+  private volatile Thread thread;
+
+  RecordWatcher(String location) throws IOException {
+    this.consumer = new JsonConsumer(location);
+    this.paths = new JsonElectionRecordPath(Path.of(location));
+    this.watchService = paths.topPath().getFileSystem().newWatchService();
+    register(paths.topPath());
+    registerBallotsDir(false);
+    register(paths.spoiledBallotDirPath());
+  }
+
+  /** Start delivering changes to the listener, on the EDT. */
+  synchronized void start(Consumer<Changes> listener) {
+    if (thread != null) {
+      return;
+    }
+    thread = new Thread(() -> watch(listener), "RecordWatcher " + paths.topPath());
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  @Override
+  public void close() {
+    try {
+      watchService.close(); // the watch thread gets a ClosedWatchServiceException
+    } catch (IOException e) {
+      logger.atWarning().withCause(e).log("Failed closing watch of '%s'", paths.topPath());
+    }
+  }
+
+  private void watch(Consumer<Changes> listener) {
+    try {
+      while (true) {
+        boolean pending = firstChange != 0;
+        WatchKey key = pending ? watchService.poll(QUIET_MS, TimeUnit.MILLISECONDS) : watchService.take();
+        if (key != null) {
+          handle(key);
+        }
+        if (firstChange != 0 && (key == null || System.currentTimeMillis() - firstChange > MAX_DELAY_MS)) {
+          Changes changes = readChanges();
+          SwingUtilities.invokeLater(() -> listener.accept(changes));
+        }
+      }
+    } catch (ClosedWatchServiceException e) {
+      // closed
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void handle(WatchKey key) {
+    Path dir = watched.get(key);
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == OVERFLOW) {
+        overflow = true;
+        changed();
+        continue;
+      }
+      if (dir == null) {
+        continue;
+      }
+      Path path = dir.resolve((Path) event.context());
+      if (dir.equals(paths.topPath())) {
+        if (path.equals(paths.encryptedTallyPath())) {
+          encryptedTallyChanged = true;
+          changed();
+        } else if (path.equals(paths.tallyPath())) {
+          tallyChanged = true;
+          changed();
+        } else if (path.equals(paths.ballotsDirPath())) {
+          registerBallotsDir(true);
+        } else if (path.equals(paths.spoiledBallotDirPath())) {
+          registerAndScan(path, JsonElectionRecordPath::isSpoiledBallotFile, changedSpoiled);
+        }
+      } else if (dir.equals(paths.spoiledBallotDirPath())) {
+        if (JsonElectionRecordPath.isSpoiledBallotFile(path)) {
+          changedSpoiled.add(path);
+          changed();
+        }
+      } else if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+        registerAndScan(path, JsonElectionRecordPath::isBallotFile, changedBallots); // a new hashed subdirectory
+      } else if (JsonElectionRecordPath.isBallotFile(path)) {
+        changedBallots.add(path);
+        changed();
+      }
+    }
+    if (!key.reset()) {
+      watched.remove(key);
+    }
+  }
+
+  private void changed() {
+    if (firstChange == 0) {
+      firstChange = System.currentTimeMillis();
+    }
+  }
+
+  /** Read the changed files, in parallel, and start a new batch. */
+  private Changes readChanges() {
+    List<EncryptedBallot> ballots = changedBallots.parallelStream()
+            .map(JsonConsumer::readEncryptedBallot)
+            .filter(Objects::nonNull)
+            .toList();
+    List<PlaintextTally> spoiled = changedSpoiled.parallelStream()
+            .map(JsonConsumer::readPlaintextTally)
+            .filter(Objects::nonNull)
+            .toList();
+    Changes changes = new Changes(ballots, spoiled,
+            encryptedTallyChanged ? consumer.readEncryptedTally() : null,
+            tallyChanged ? consumer.readDecryptedTally() : null,
+            overflow);
+    logger.atFine().log("%s: %d ballots, %d spoiled ballots changed", paths.topPath(), ballots.size(), spoiled.size());
+    changedBallots.clear();
+    changedSpoiled.clear();
+    encryptedTallyChanged = false;
+    tallyChanged = false;
+    overflow = false;
+    firstChange = 0;
+    return changes;
+  }
+
+  /** Register the ballot directory and its hashed subdirectories. */
+  private void registerBallotsDir(boolean scan) {
+    Path ballotsDir = paths.ballotsDirPath();
+    if (!register(ballotsDir)) {
+      return;
+    }
+    try (DirectoryStream<Path> subdirs = Files.newDirectoryStream(ballotsDir, Files::isDirectory)) {
+      for (Path subdir : subdirs) {
+        register(subdir);
+      }
+    } catch (IOException e) {
+      logger.atWarning().withCause(e).log("Failed listing '%s'", ballotsDir);
+    }
+    if (scan) {
+      scanBallots();
+    }
+  }
+
+  private void scanBallots() {
+    try (Stream<Path> ballots = paths.ballotPaths()) {
+      ballots.forEach(changedBallots::add);
+    }
+    changed();
+  }
+
+  /** Register a directory made after the watch started, and pick up the files already written to it. */
+  private void registerAndScan(Path dir, Predicate<Path> wanted, Set<Path> changedFiles) {
+    if (!register(dir)) {
+      return;
+    }
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, wanted::test)) {
+      files.forEach(changedFiles::add);
+    } catch (IOException e) {
+      logger.atWarning().withCause(e).log("Failed listing '%s'", dir);
+    }
+    changed();
+  }
+
+  private boolean register(Path dir) {
+    if (!Files.isDirectory(dir)) {
+      return false;
+    }
+    try {
+      watched.put(dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY), dir);
+      return true;
+    } catch (IOException e) {
+      logger.atWarning().withCause(e).log("Failed watching '%s'", dir);
+      return false;
+    }
+  }
+}
@@ -0,0 +1,230 @@
+package electionguard.viewer;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.google.common.flogger.FluentLogger;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import electionguard.ballot.EncryptedTally;
+import electionguard.json.EncryptedTallyPojo;
+import electionguard.json.JsonConsumer;
+import electionguard.json.JsonElectionRecordPath;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Formatter;
+import java.util.List;
+
+/**
+ * Re-tally a JSON election record in shards, so it can be spread over processes or nodes.
+ * The ballot files are split into shards by the hash of their names. A worker re-tallies one shard
+ * and writes its partial tally to partial-i-of-n.json in the output directory; the merge multiplies
+ * all n partials into the final EncryptedTally, and compares it to the record's.
+ * <pre>
+ *   one host:   ShardedReTally -in recordDir -out partialDir -nshards 8
+ *   each node:  ShardedReTally -in recordDir -out partialDir -nshards 8 -shard i
+ *   then:       ShardedReTally -in recordDir -out partialDir -nshards 8 -merge
+ * </pre>
+ * On one host, each shard is run in its own worker JVM, with the same classpath.
+ */
+public class ShardedReTally {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+  private static final Gson gson = new Gson(); // compact output; Gson is thread safe, so one instance is shared
+  static final String MERGED_TALLY = "retally_encrypted_tally.json";
+
+  private static class CommandLine {
+    @Parameter(names = {"-in"}, order = 0, description = "Directory or zip of the JSON election record", required = true)
+    String inputDir;
+
+    @Parameter(names = {"-out"}, order = 1, description = "Directory for the partial and merged tallies", required = true)
+    String outputDir;
+
+    @Parameter(names = {"-nshards"}, order = 2, description = "Number of shards")
+    int nshards = 4;
+
+    @Parameter(names = {"-shard"}, order = 3, description = "Only re-tally this shard, 0 to nshards-1, as a worker")
+    int shard = -1;
+
+    @Parameter(names = {"-merge"}, order = 4, description = "Only merge the partial tallies already in the output directory")
+    boolean merge = false;
+
+    @Parameter(names = {"-nthreads"}, order = 5, description = "Number of threads in each worker, default is processors / nshards")
+    int nthreads = 0;
+
+    @Parameter(names = {"-h", "--help"}, order = 9, description = "Display this help and exit", help = true)
+    boolean help = false;
+
+    private final JCommander jc;
+
+    CommandLine(String progName, String[] args) throws ParameterException {
+      this.jc = new JCommander(this);
+      this.jc.parse(args);
+      jc.setProgramName(progName);
+    }
+
+    void printUsage() {
+      StringBuilder sb = new StringBuilder();
+      this.jc.usage(sb);
+      System.out.println(sb);
+    }
+  }
+
+  /** The contents of a partial tally file. */
+  record Partial(int shard, int nshards, int nballots, EncryptedTally tally) {}
+
+  public static void main(String[] args) {
+    String progName = ShardedReTally.class.getName();
+    CommandLine cmdLine;
+    try {
+      cmdLine = new CommandLine(progName, args);
+      if (cmdLine.help) {
+        cmdLine.printUsage();
+        return;
+      }
+      if (cmdLine.nshards < 1 || cmdLine.shard >= cmdLine.nshards) {
+        throw new ParameterException("need 0 <= shard < nshards");
+      }
+    } catch (ParameterException e) {
+      System.err.println(e.getMessage());
+      System.err.printf("Try '%s --help' for more information.%n", progName);
+      System.exit(VerifyMain.ERROR);
+      return;
+    }
+
+    Path outputDir = Path.of(cmdLine.outputDir);
+    int nthreads = cmdLine.nthreads > 0 ? cmdLine.nthreads :
+            Math.max(1, VerificationRun.defaultThreads() / (cmdLine.shard >= 0 ? 1 : cmdLine.nshards));
+    try {
+      Files.createDirectories(outputDir);
+      if (cmdLine.shard >= 0) {
+        Partial partial = runShard(cmdLine.inputDir, cmdLine.shard, cmdLine.nshards, nthreads);
+        writePartial(partial, outputDir);
+        System.exit(VerifyMain.OK);
+      }
+      if (!cmdLine.merge) {
+        forkWorkers(cmdLine.inputDir, outputDir, cmdLine.nshards, nthreads);
+      }
+      Formatter f = new Formatter();
+      boolean ok = mergeAndCompare(cmdLine.inputDir, outputDir, cmdLine.nshards, f);
+      System.out.print(f);
+      System.exit(ok ? VerifyMain.OK : VerifyMain.FAILED);
+    } catch (Exception e) {
+      System.err.printf("Re-tally failed: %s%n", e.getMessage());
+      System.exit(VerifyMain.ERROR);
+    }
+  }
+
+  /** Re-tally the CAST ballots of one shard. */
+  static Partial runShard(String location, int shard, int nshards, int nthreads) throws IOException, InterruptedException {
+    ReTally retally = new ReTally(nthreads);
+    ReTally.Accumulator accumulator;
+    try (JsonElectionRecordPath paths = JsonElectionRecordPath.of(location)) {
+      accumulator = retally.accumulate(paths.ballotPaths(shard, nshards));
+    }
+    logger.atInfo().log("shard %d of %d: %d CAST ballots, %.1f ballots/s", shard, nshards,
+            accumulator.nballots(), retally.ballotsPerSecond());
+    return new Partial(shard, nshards, accumulator.nballots(),
+            accumulator.toTally("partial-" + shard + "-of-" + nshards));
+  }
+
+  /** Run each shard in a worker JVM on this host, and wait for all of them. */
+  static void forkWorkers(String location, Path outputDir, int nshards, int nthreads) throws IOException, InterruptedException {
+    String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+    List<Process> workers = new ArrayList<>();
+    for (int shard = 0; shard < nshards; shard++) {
+      List<String> command = new ArrayList<>();
+      command.add(java);
+      // pass on the heap size and system properties, such as electionguard.powRadix, but not agents
+      for (String arg : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+        if (arg.startsWith("-Xmx") || arg.startsWith("-D")) {
+          command.add(arg);
+        }
+      }
+      command.addAll(List.of("-cp", System.getProperty("java.class.path"), ShardedReTally.class.getName(),
+              "-in", location, "-out", outputDir.toString(), "-nshards", Integer.toString(nshards),
+              "-shard", Integer.toString(shard), "-nthreads", Integer.toString(nthreads)));
+      workers.add(new ProcessBuilder(command).inheritIO().start());
+    }
+    int failed = 0;
+    for (Process worker : workers) {
+      if (worker.waitFor() != VerifyMain.OK) {
+        failed++;
+      }
+    }
+    if (failed > 0) {
+      throw new IllegalStateException(failed + " of " + nshards + " workers failed");
+    }
+  }
+
+  /** Multiply the partial tallies into one, write it, and compare it to the record's encrypted tally. */
+  static boolean mergeAndCompare(String location, Path outputDir, int nshards, Formatter f) throws IOException {
+    long start = System.nanoTime();
+    ReTally.Accumulator merged = new ReTally.Accumulator();
+    for (int shard = 0; shard < nshards; shard++) {
+      Partial partial = readPartial(partialPath(outputDir, shard, nshards));
+      if (partial.shard() != shard || partial.nshards() != nshards) {
+        throw new IllegalStateException("partial tally for shard " + shard + " is for another sharding");
+      }
+      merged.merge(partial.tally(), partial.nballots());
+    }
+
+    EncryptedTally expected;
+    try (JsonConsumer json = new JsonConsumer(location)) {
+      expected = json.readEncryptedTally();
+    }
+    EncryptedTally tally = merged.toTally(expected == null ? "retally" : expected.getTallyId());
+    writeAtomically(outputDir.resolve(MERGED_TALLY), gson.toJson(EncryptedTallyPojo.serialize(tally)));
+    f.format(" Merged %d partial tallies of %d CAST ballots in %.3f secs, wrote %s%n", nshards, merged.nballots(),
+            (System.nanoTime() - start) * 1.0e-9, outputDir.resolve(MERGED_TALLY));
+    if (expected == null) {
+      f.format(" No encrypted tally in the record%n");
+      return false;
+    }
+    List<ReTally.Mismatch> mismatches = ReTally.compare(expected, merged);
+    f.format(" %s%n", mismatches.isEmpty() ? "matches the encrypted tally" :
+            mismatches.size() + " mismatches with the encrypted tally");
+    for (ReTally.Mismatch mismatch : mismatches) {
+      f.format("  %s / %s: %s%n", mismatch.contestId(), mismatch.selectionId(), mismatch.problem());
+    }
+    return mismatches.isEmpty();
+  }
+
+  static Path partialPath(Path outputDir, int shard, int nshards) {
+    return outputDir.resolve("partial-" + shard + "-of-" + nshards + ".json");
+  }
+
+  static void writePartial(Partial partial, Path outputDir) throws IOException {
+    JsonObject json = new JsonObject();
+    json.addProperty("shard", partial.shard());
+    json.addProperty("nshards", partial.nshards());
+    json.addProperty("nballots", partial.nballots());
+    json.add("tally", EncryptedTallyPojo.serialize(partial.tally()));
+    writeAtomically(partialPath(outputDir, partial.shard(), partial.nshards()), gson.toJson(json));
+  }
+
+  static Partial readPartial(Path path) throws IOException {
+    try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+      JsonObject json = JsonParser.parseReader(reader).getAsJsonObject();
+      return new Partial(json.get("shard").getAsInt(), json.get("nshards").getAsInt(), json.get("nballots").getAsInt(),
+              EncryptedTallyPojo.deserialize(json.get("tally")));
+    }
+  }
+
+  /** Write to a temporary file and move it into place, so a reader never sees a partial file. */
+  private static void writeAtomically(Path path, String contents) throws IOException {
+    Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+    try (Writer out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+      out.write(contents);
+    }
+    Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+}
@@ -2,6 +2,7 @@ package electionguard.viewer;
 
 import electionguard.ballot.Manifest;
 import electionguard.ballot.PlaintextTally;
+import electionguard.json.ManifestIndex;
 import ucar.ui.widget.BAMutil;
 import ucar.ui.widget.FileManager;
 import ucar.ui.widget.IndependentWindow;
@@ -62,7 +63,7 @@ class SpoiledBallotPanel extends JPanel {
   }
 
   boolean setSpoiledBallots(Manifest manifest, Iterable<PlaintextTally> ballots) {
-    spoiledBallotsTable.setPlaintextTallies(manifest, ballots);
+    spoiledBallotsTable.setPlaintextTallies(new ManifestIndex(manifest), ballots);
     return true;
   }
 
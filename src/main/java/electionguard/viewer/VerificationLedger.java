@@ -0,0 +1,135 @@
+package electionguard.viewer;
+
+import com.google.common.flogger.FluentLogger;
+import electionguard.ballot.EncryptedBallot;
+import electionguard.json.BallotSnapshot;
+import electionguard.publish.ElectionRecord;
+
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The results of verifying each ballot of a record, kept between runs, so that a re-verify only checks
+ * ballots that are new or have changed. Keyed by ballot id and a digest of the whole ballot, see
+ * BallotSnapshot.digest(), so a changed proof or ciphertext is checked again even if the crypto_hash is the same.
+ * The whole ledger is keyed by the record's base hash, extended base hash and joint public key: if any of those
+ * change, it starts empty.
+ */
+class VerificationLedger {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+  static final int MAGIC = 0x4547564C; // "EGVL"
+  static final int VERSION = 2;
+  static final String SUFFIX = ".egvl";
+
+  private record Entry(byte[] digest, boolean ok) {}
+
+  private final Path ledgerPath;
+  private final String recordKey;
+  private final Map<String, Entry> previous;
+  private final Map<String, Entry> current = new ConcurrentHashMap<>();
+
+  private VerificationLedger(Path ledgerPath, String recordKey, Map<String, Entry> previous) {
+    this.ledgerPath = ledgerPath;
+    this.recordKey = recordKey;
+    this.previous = previous;
+  }
+
+  /** Open the ledger for the record at location, kept in ledgerDir. */
+  static VerificationLedger open(Path ledgerDir, String location, ElectionRecord record) {
+    String name = sha256Hex(Path.of(location).toAbsolutePath().normalize().toString()).substring(0, 32);
+    Path ledgerPath = ledgerDir.resolve(name + SUFFIX);
+    String recordKey = sha256Hex(record.cryptoBaseHash() + "/" + record.cryptoExtendedBaseHash() + "/" + record.jointPublicKey());
+    Map<String, Entry> previous = new ConcurrentHashMap<>();
+    try {
+      read(ledgerPath, recordKey, previous);
+    } catch (IOException e) {
+      logger.atWarning().withCause(e).log("Failed reading verification ledger '%s'", ledgerPath);
+      previous.clear();
+    }
+    return new VerificationLedger(ledgerPath, recordKey, previous);
+  }
+
+  /** The digest that a ballot's result is kept under. */
+  static byte[] digest(EncryptedBallot ballot) {
+    return BallotSnapshot.digest(ballot);
+  }
+
+  /** The result from the previous run for this ballot, or null if it was not checked with this digest. */
+  @Nullable
+  Boolean previousResult(String ballotId, byte[] digest) {
+    Entry entry = previous.get(ballotId);
+    if (entry == null || !Arrays.equals(entry.digest(), digest)) {
+      return null;
+    }
+    return entry.ok();
+  }
+
+  /** Record the result of this run for this ballot. Thread safe. */
+  void put(String ballotId, byte[] digest, boolean ok) {
+    current.put(ballotId, new Entry(digest, ok));
+  }
+
+  int previousSize() {
+    return previous.size();
+  }
+
+  /** Write the results of this run, replacing the previous ledger. Ballots no longer in the record are dropped. */
+  void save() throws IOException {
+    Files.createDirectories(ledgerPath.getParent());
+    Path temp = Files.createTempFile(ledgerPath.getParent(), ledgerPath.getFileName().toString(), ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeUTF(recordKey);
+      out.writeInt(current.size());
+      for (Map.Entry<String, Entry> e : current.entrySet()) {
+        out.writeUTF(e.getKey());
+        out.writeByte(e.getValue().digest().length);
+        out.write(e.getValue().digest());
+        out.writeBoolean(e.getValue().ok());
+      }
+    }
+    Files.move(temp, ledgerPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private static void read(Path ledgerPath, String recordKey, Map<String, Entry> into) throws IOException {
+    if (!Files.exists(ledgerPath)) {
+      return;
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(ledgerPath), 1 << 16))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION || !recordKey.equals(in.readUTF())) {
+        return;
+      }
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        String ballotId = in.readUTF();
+        byte[] digest = new byte[in.readUnsignedByte()];
+        in.readFully(digest);
+        into.put(ballotId, new Entry(digest, in.readBoolean()));
+      }
+    }
+  }
+
+  private static String sha256Hex(String value) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
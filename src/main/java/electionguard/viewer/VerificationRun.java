@@ -0,0 +1,320 @@
+package electionguard.viewer;
+
+import electionguard.ballot.EncryptedBallot;
+import electionguard.ballot.EncryptedTally;
+import electionguard.ballot.PlaintextTally;
+import electionguard.json.ElectionRecordJson;
+import electionguard.json.JsonConsumer;
+import electionguard.json.SelectionProof;
+import electionguard.publish.ElectionRecord;
+import electionguard.verifier.Verifier;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Formatter;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Verifies an ElectionRecord in timed phases, reporting progress to a Listener.
+ * The phases are the guardian proofs and the decryption shares, checked by the Verifier's separate steps,
+ * and between them the ballot proofs, checked one ballot at a time by a BallotVerifier with progress as they go,
+ * and the tally aggregation, comparing the encrypted tally to the product of the CAST ballots. A JSON record's
+ * ballots are counted from the file listing for the progress total; other records' ballots are not counted.
+ * With a VerificationLedger, the ballot proofs are only checked for ballots that are new or changed since the
+ * ledger was written; the results for the other ballots come from the ledger.
+ * With batch proofs, the selection proofs are checked in batches by a BatchProofVerifier, using the commitments
+ * kept when the JSON ballots are parsed. Both can be used together, and the other phases run as usual, so these runs are
+ * a complete verification, and keep a result for each ballot, see ballotResults().
+ * Cancel by interrupting the running thread; the guardian and decryption phases can't be stopped part way.
+ */
+public class VerificationRun {
+  private static final long PROGRESS_NANOS = 200_000_000L;
+  private static final int BATCH = 256;
+
+  /** Timing of one phase. */
+  public record Phase(String name, boolean ok, long nanos, int count) {
+    public double seconds() {
+      return nanos * 1.0e-9;
+    }
+
+    public double perSecond() {
+      return nanos == 0 ? 0.0 : count / seconds();
+    }
+  }
+
+  /** The result for one ballot; cached if it came from the ledger. */
+  public record BallotResult(String ballotId, String state, boolean ok, boolean cached) {}
+
+  /** Called from the verifying thread; total is -1 if not known. */
+  public interface Listener {
+    void progress(String phase, int done, int total, double perSecond);
+  }
+
+  private final ElectionRecord record;
+  private final int nthreads;
+  private final Listener listener;
+  @Nullable
+  private final VerificationLedger ledger;
+  @Nullable
+  private final Iterable<JsonConsumer.BallotProofs> ballotProofs;
+  private final List<Phase> phases = new ArrayList<>();
+  private final List<BallotResult> ballotResults = new ArrayList<>();
+  private final List<ReTally.Mismatch> aggregationMismatches = new ArrayList<>();
+  private int checked;
+  private int reused;
+
+  public VerificationRun(ElectionRecord record, int nthreads, Listener listener) {
+    this(record, nthreads, listener, null, null);
+  }
+
+  /**
+   * @param ledger if not null, verify incrementally with this ledger
+   * @param ballotProofs if not null, check the selection proofs in batches, taking the ballots and their proofs
+   *                     from this, see JsonConsumer.iteratorBallotProofs(), instead of from the record
+   */
+  VerificationRun(ElectionRecord record, int nthreads, Listener listener, @Nullable VerificationLedger ledger,
+                  @Nullable Iterable<JsonConsumer.BallotProofs> ballotProofs) {
+    this.record = record;
+    this.nthreads = nthreads;
+    this.listener = listener;
+    this.ledger = ledger;
+    this.ballotProofs = ballotProofs;
+  }
+
+  public static int defaultThreads() {
+    return Runtime.getRuntime().availableProcessors();
+  }
+
+  /** Run all phases, return true if all succeeded. */
+  public boolean run() {
+    Verifier verifier = new Verifier(record, nthreads);
+    phase("guardian proofs", record.guardians().size(), verifier::verifyGuardianPublicKey);
+    checkAggregation(verifyBallots());
+    PlaintextTally decryptedTally = record.decryptedTally();
+    if (decryptedTally != null) {
+      phase("decryption shares", countSelections(decryptedTally), verifier::verifyDecryptedTally);
+    }
+    return checksPassed();
+  }
+
+  /** True if all the phases that were run succeeded. */
+  public boolean checksPassed() {
+    return phases.stream().allMatch(Phase::ok);
+  }
+
+  private static int countSelections(PlaintextTally tally) {
+    return tally.getContests().values().stream().mapToInt(contest -> contest.getSelections().size()).sum();
+  }
+
+  /** Check the ballot proofs, and return the accumulated CAST ballots. */
+  private ReTally.Accumulator verifyBallots() {
+    String name = "ballot proofs";
+    ReTally.Accumulator accumulator = new ReTally.Accumulator();
+    BallotVerifier checker = new BallotVerifier(record, KUtils.productionGroup());
+    BatchProofVerifier batchVerifier = ballotProofs == null ? null : new BatchProofVerifier(record, KUtils.productionGroup());
+    ForkJoinPool pool = new ForkJoinPool(nthreads);
+    int total = record instanceof ElectionRecordJson json ? json.ballotFileCount() : -1;
+    listener.progress(name, 0, total, 0.0);
+    long start = System.nanoTime();
+    long lastShown = start;
+    boolean ok = true;
+    try {
+      List<EncryptedBallot> batch = new ArrayList<>(BATCH);
+      List<List<SelectionProof>> proofs = new ArrayList<>(BATCH);
+      List<byte[]> digests = new ArrayList<>(BATCH);
+      Iterable<JsonConsumer.BallotProofs> ballots = ballotProofs != null ? ballotProofs : () ->
+              StreamSupport.stream(record.encryptedBallots(null).spliterator(), false)
+                      .map(ballot -> new JsonConsumer.BallotProofs(ballot, null)).iterator();
+      for (JsonConsumer.BallotProofs next : ballots) {
+        checkCancelled();
+        EncryptedBallot ballot = next.ballot();
+        accumulator.add(ballot);
+        byte[] digest = ledger == null ? null : VerificationLedger.digest(ballot);
+        Boolean previous = ledger == null ? null : ledger.previousResult(ballot.getBallotId(), digest);
+        if (previous != null) {
+          ledger.put(ballot.getBallotId(), digest, previous);
+          ballotResults.add(new BallotResult(ballot.getBallotId(), String.valueOf(ballot.getState()), previous, true));
+          ok &= previous;
+          reused++;
+        } else {
+          batch.add(ballot);
+          proofs.add(next.proofs());
+          digests.add(digest);
+          if (batch.size() == BATCH) {
+            ok &= checkBatch(pool, checker, batchVerifier, batch, proofs, digests);
+            batch = new ArrayList<>(BATCH);
+            proofs = new ArrayList<>(BATCH);
+            digests = new ArrayList<>(BATCH);
+          }
+        }
+        long now = System.nanoTime();
+        if (now - lastShown > PROGRESS_NANOS) {
+          lastShown = now;
+          listener.progress(name, checked + reused, total, (checked + reused) / ((now - start) * 1.0e-9));
+        }
+      }
+      ok &= checkBatch(pool, checker, batchVerifier, batch, proofs, digests);
+    } finally {
+      pool.shutdown();
+    }
+    Phase phase = new Phase(name, ok, System.nanoTime() - start, checked + reused);
+    phases.add(phase);
+    listener.progress(name, phase.count(), phase.count(), phase.perSecond());
+    if (ledger != null) {
+      try {
+        ledger.save();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    return accumulator;
+  }
+
+  /** Compare the encrypted tally to the accumulated CAST ballots, if the record has one. */
+  private void checkAggregation(ReTally.Accumulator accumulator) {
+    EncryptedTally expected = record.encryptedTally();
+    if (expected == null) {
+      return;
+    }
+    long start = System.nanoTime();
+    aggregationMismatches.addAll(ReTally.compare(expected, accumulator));
+    phases.add(new Phase("tally aggregation", aggregationMismatches.isEmpty(), System.nanoTime() - start,
+            accumulator.nballots()));
+  }
+
+  /**
+   * Check a batch of ballots; proofs are their selection proofs when checking in batches, digests are their
+   * ledger digests, or nulls if there is no ledger.
+   */
+  private boolean checkBatch(ForkJoinPool pool, BallotVerifier checker, @Nullable BatchProofVerifier batchVerifier,
+                             List<EncryptedBallot> batch, List<List<SelectionProof>> proofs, List<byte[]> digests) {
+    List<Boolean> results;
+    try {
+      results = pool.submit(() -> batchVerifier == null ?
+              batch.parallelStream().map(checker::verify).toList() :
+              checkWithBatchProofs(checker, batchVerifier, batch, proofs)).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CancellationException();
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    }
+    boolean ok = true;
+    for (int i = 0; i < batch.size(); i++) {
+      EncryptedBallot ballot = batch.get(i);
+      boolean ballotOk = results.get(i);
+      if (ledger != null) {
+        ledger.put(ballot.getBallotId(), digests.get(i), ballotOk);
+      }
+      if (isPerBallot()) {
+        ballotResults.add(new BallotResult(ballot.getBallotId(), String.valueOf(ballot.getState()), ballotOk, false));
+      }
+      ok &= ballotOk;
+    }
+    checked += batch.size();
+    return ok;
+  }
+
+  /**
+   * Check the contest proofs of each ballot, and the selection proofs of all the ballots in nthreads batches.
+   * A ballot without a proof for every selection is checked by the BallotVerifier. Runs in the pool.
+   */
+  private List<Boolean> checkWithBatchProofs(BallotVerifier checker, BatchProofVerifier batchVerifier,
+                                             List<EncryptedBallot> ballots, List<List<SelectionProof>> proofs) {
+    List<SelectionProof> all = new ArrayList<>();
+    for (int i = 0; i < ballots.size(); i++) {
+      List<SelectionProof> ballotProofs = proofs.get(i);
+      if (ballotProofs != null && ballotProofs.size() == countSelections(ballots.get(i))) {
+        all.addAll(ballotProofs);
+      }
+    }
+    int chunk = Math.max(1, (all.size() + nthreads - 1) / nthreads);
+    Set<String> failedBallots = IntStream.range(0, (all.size() + chunk - 1) / chunk).parallel()
+            .mapToObj(i -> batchVerifier.failures(all.subList(i * chunk, Math.min(all.size(), (i + 1) * chunk))))
+            .flatMap(List::stream)
+            .map(SelectionProof::ballotId)
+            .collect(Collectors.toSet());
+
+    return IntStream.range(0, ballots.size()).parallel().mapToObj(i -> {
+      EncryptedBallot ballot = ballots.get(i);
+      List<SelectionProof> ballotProofs = proofs.get(i);
+      if (ballotProofs == null || ballotProofs.size() != countSelections(ballot)) {
+        return checker.verify(ballot);
+      }
+      return !failedBallots.contains(ballot.getBallotId()) && checker.verifyContests(ballot);
+    }).toList();
+  }
+
+  private static int countSelections(EncryptedBallot ballot) {
+    return ballot.getContests().stream().mapToInt(contest -> contest.getSelections().size()).sum();
+  }
+
+  /** Run one phase over count items, and record its timing. */
+  boolean phase(String name, int count, BooleanSupplier task) {
+    checkCancelled();
+    listener.progress(name, 0, count, 0.0);
+    long start = System.nanoTime();
+    boolean ok = task.getAsBoolean();
+    long took = System.nanoTime() - start;
+    Phase phase = new Phase(name, ok, took, count);
+    phases.add(phase);
+    listener.progress(name, count, count, phase.perSecond());
+    return ok;
+  }
+
+  private static void checkCancelled() {
+    if (Thread.currentThread().isInterrupted()) {
+      throw new CancellationException();
+    }
+  }
+
+  public int nthreads() {
+    return nthreads;
+  }
+
+  public List<Phase> phases() {
+    return Collections.unmodifiableList(phases);
+  }
+
+  /** Per ballot results, only when run with a ledger or with batch proofs. */
+  public List<BallotResult> ballotResults() {
+    return Collections.unmodifiableList(ballotResults);
+  }
+
+  /** Where the encrypted tally differs from the accumulated ballots. */
+  public List<ReTally.Mismatch> aggregationMismatches() {
+    return Collections.unmodifiableList(aggregationMismatches);
+  }
+
+  public boolean isPerBallot() {
+    return ledger != null || ballotProofs != null;
+  }
+
+  public void report(Formatter f) {
+    f.format(" %-18s %4s %10s %10s %12s%n", "phase", "ok", "secs", "count", "count/sec");
+    long total = 0;
+    for (Phase phase : phases) {
+      f.format(" %-18s %4s %10.3f %10d %12.1f%n", phase.name(), phase.ok() ? "yes" : "NO",
+              phase.seconds(), phase.count(), phase.perSecond());
+      total += phase.nanos();
+    }
+    f.format(" total %.3f secs with %d threads%n", total * 1.0e-9, nthreads);
+    if (ledger != null) {
+      f.format(" %d ballots checked, %d results from the verification ledger%n", checked, reused);
+    }
+    for (ReTally.Mismatch mismatch : aggregationMismatches) {
+      f.format("  tally %s / %s: %s%n", mismatch.contestId(), mismatch.selectionId(), mismatch.problem());
+    }
+  }
+}
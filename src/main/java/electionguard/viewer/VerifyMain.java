@@ -0,0 +1,312 @@
+package electionguard.viewer;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import electionguard.ballot.EncryptedTally;
+import electionguard.core.PowRadixOption;
+import electionguard.json.JsonConsumer;
+import electionguard.json.TarGzRecord;
+import electionguard.publish.Consumer;
+import electionguard.publish.ElectionRecord;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Formatter;
+import java.util.List;
+
+import static electionguard.publish.ElectionRecordFactoryKt.electionRecordFromConsumer;
+
+/**
+ * Verify an election record without the viewer, writing a JSON or CSV report.
+ * Exits with 0 if the record verifies, 1 if it does not, and 2 if it can't be read. A ledger or batch proofs only
+ * change how the ballot proofs are checked, so those runs exit with 0 too. A .tar.gz record can only be
+ * re-tallied, with -retally, which is a partial check, and exits with 3 if it matches.
+ * Run from the fat jar with: java -cp electionguard-viewer-all.jar electionguard.viewer.VerifyMain -in recordDir
+ */
+public class VerifyMain {
+  static final int OK = 0;
+  static final int FAILED = 1;
+  static final int ERROR = 2;
+  static final int PARTIAL = 3;
+
+  private static class CommandLine {
+    @Parameter(names = {"-in"}, order = 0, description = "Directory or zip of the election record, or a tar.gz to re-tally", required = true)
+    String inputDir;
+
+    @Parameter(names = {"-nthreads"}, order = 1, description = "Number of verification threads, default is the number of processors")
+    int nthreads = VerificationRun.defaultThreads();
+
+    @Parameter(names = {"-format"}, order = 2, description = "Report format, json or csv")
+    String format = "json";
+
+    @Parameter(names = {"-out"}, order = 3, description = "Write the report to this file, default is stdout")
+    String outputFile;
+
+    @Parameter(names = {"-ledger"}, order = 4, description = "Verify incrementally, keeping a verification ledger in this directory")
+    String ledgerDir;
+
+    @Parameter(names = {"-batch"}, order = 5, description = "Check the selection proofs in batches, JSON records only")
+    boolean batch = false;
+
+    @Parameter(names = {"-powRadix"}, order = 6, description = "PowRadix tables: LOW_MEMORY_USE, HIGH_MEMORY_USE or EXTREME_MEMORY_USE, default depends on the max heap")
+    PowRadixOption powRadix;
+
+    @Parameter(names = {"-benchmarkPowRadix"}, order = 7, description = "Before verifying, time each PowRadix option and write the results to stderr")
+    boolean benchmarkPowRadix = false;
+
+    @Parameter(names = {"-retally"}, order = 8, description = "Also recompute the encrypted tally from the CAST ballots and compare")
+    boolean retally = false;
+
+    @Parameter(names = {"-h", "--help"}, order = 9, description = "Display this help and exit", help = true)
+    boolean help = false;
+
+    private final JCommander jc;
+
+    CommandLine(String progName, String[] args) throws ParameterException {
+      this.jc = new JCommander(this);
+      this.jc.parse(args);
+      jc.setProgramName(progName);
+    }
+
+    void printUsage() {
+      jc.usage();
+    }
+  }
+
+  /**
+   * The report. Without a ledger or batch proofs, the Verifier gives one result for the whole record, and there are
+   * no ballot results. With them, each ballot's proofs are checked separately, or its result taken from the ledger.
+   */
+  static class Report {
+    String record;
+    boolean ok;
+    boolean partial; // not every check was run, so ok is false
+    String error;
+    int nthreads;
+    String powRadix;
+    double wallSecs;
+    long peakHeapBytes;
+    double ballotsPerSec;
+    List<VerificationRun.Phase> phases = new ArrayList<>();
+    List<VerificationRun.BallotResult> ballots = new ArrayList<>();
+    List<ReTally.Mismatch> aggregationMismatches = new ArrayList<>();
+    Boolean retallyOk;
+    double retallyBallotsPerSec;
+    List<ReTally.Mismatch> retallyMismatches;
+  }
+
+  public static void main(String[] args) {
+    String progName = VerifyMain.class.getName();
+    CommandLine cmdLine;
+    try {
+      cmdLine = new CommandLine(progName, args);
+      if (cmdLine.help) {
+        cmdLine.printUsage();
+        return;
+      }
+    } catch (ParameterException e) {
+      System.err.println(e.getMessage());
+      System.err.printf("Try '%s --help' for more information.%n", progName);
+      System.exit(ERROR);
+      return;
+    }
+
+    if (cmdLine.powRadix != null) {
+      KUtils.setPowRadixOption(cmdLine.powRadix);
+    }
+    if (cmdLine.benchmarkPowRadix) {
+      Formatter f = new Formatter();
+      PowRadixBenchmark.run(f);
+      System.err.print(f);
+    }
+    Report report = verify(cmdLine.inputDir, cmdLine.nthreads,
+            cmdLine.ledgerDir == null ? null : Path.of(cmdLine.ledgerDir), cmdLine.batch, cmdLine.retally);
+    try (Writer out = cmdLine.outputFile == null ? new PrintWriter(System.out) :
+            Files.newBufferedWriter(Path.of(cmdLine.outputFile), StandardCharsets.UTF_8)) {
+      if (cmdLine.format.equalsIgnoreCase("csv")) {
+        writeCsv(report, out);
+      } else {
+        writeJson(report, out);
+      }
+    } catch (IOException e) {
+      System.err.printf("Failed writing report: %s%n", e.getMessage());
+      System.exit(ERROR);
+    }
+    System.exit(exitCode(report));
+  }
+
+  static int exitCode(Report report) {
+    if (report.error != null) {
+      return ERROR;
+    }
+    if (report.ok) {
+      return OK;
+    }
+    boolean checksPassed = report.phases.stream().allMatch(VerificationRun.Phase::ok)
+            && (report.retallyOk == null || report.retallyOk);
+    return report.partial && checksPassed ? PARTIAL : FAILED;
+  }
+
+  static Report verify(String location, int nthreads, @Nullable Path ledgerDir, boolean batch, boolean retally) {
+    Report report = new Report();
+    report.record = location;
+    report.nthreads = nthreads;
+    report.powRadix = KUtils.powRadixOption().name();
+    long start = System.nanoTime();
+    try {
+      if (TarGzRecord.isTarGz(Path.of(location))) {
+        retallyTarGz(location, nthreads, retally, report);
+      } else {
+        verify(location, nthreads, ledgerDir, batch, retally, report);
+      }
+    } catch (Exception e) {
+      report.ok = false;
+      report.error = String.valueOf(e.getMessage());
+    }
+    report.wallSecs = (System.nanoTime() - start) * 1.0e-9;
+    report.peakHeapBytes = peakHeap();
+    return report;
+  }
+
+  private static void verify(String location, int nthreads, @Nullable Path ledgerDir, boolean batch, boolean retally,
+                             Report report) throws IOException, InterruptedException {
+    try (JsonConsumer json = new JsonConsumer(location)) {
+      boolean isJson = json.isValidElectionRecord(new Formatter());
+      if (batch && !isJson) {
+        throw new IllegalArgumentException("batch proofs need a JSON election record");
+      }
+      ElectionRecord record = isJson ? json.readElectionRecord() :
+              electionRecordFromConsumer(new Consumer(location, KUtils.productionGroup()));
+      VerificationLedger ledger = ledgerDir == null ? null : VerificationLedger.open(ledgerDir, location, record);
+      VerificationRun run = new VerificationRun(record, nthreads, (phase, done, total, perSecond) -> {}, ledger,
+              batch ? json.iteratorBallotProofs() : null);
+      report.ok = run.run();
+      report.aggregationMismatches.addAll(run.aggregationMismatches());
+      report.phases.addAll(run.phases());
+      run.phases().stream().filter(p -> p.name().equals("ballot proofs")).findFirst()
+              .ifPresent(p -> report.ballotsPerSec = p.perSecond());
+      report.ballots.addAll(run.ballotResults()); // empty unless the run checked ballots one at a time
+      if (retally) {
+        retally(record, isJson ? json : null, nthreads, report);
+      }
+    }
+  }
+
+  /** A .tar.gz can't be opened as a record, so it can only be re-tallied, which is a partial check. */
+  private static void retallyTarGz(String location, int nthreads, boolean retally, Report report)
+          throws IOException, InterruptedException {
+    if (!retally) {
+      throw new IllegalArgumentException("a .tar.gz record can only be re-tallied, with -retally");
+    }
+    ReTally retallier = new ReTally(nthreads);
+    ReTally.TarGzTally tally = retallier.accumulate(Path.of(location));
+    if (tally.expected() == null) {
+      throw new IllegalStateException("no encrypted tally to re-tally against");
+    }
+    report.partial = true;
+    report.retallyMismatches = ReTally.compare(tally.expected(), tally.actual());
+    report.retallyBallotsPerSec = retallier.ballotsPerSecond();
+    report.retallyOk = report.retallyMismatches.isEmpty();
+  }
+
+  private static void retally(ElectionRecord record, @Nullable JsonConsumer json, int nthreads, Report report)
+          throws InterruptedException {
+    EncryptedTally expected = record.encryptedTally();
+    if (expected == null) {
+      throw new IllegalStateException("no encrypted tally to re-tally against");
+    }
+    ReTally retally = new ReTally(nthreads);
+    report.retallyMismatches = ReTally.compare(expected, retally.accumulate(record, json));
+    report.retallyBallotsPerSec = retally.ballotsPerSecond();
+    report.retallyOk = report.retallyMismatches.isEmpty();
+    report.ok = report.ok && report.retallyOk;
+  }
+
+  /** Sum of the peak usage of the heap memory pools. */
+  static long peakHeap() {
+    long peak = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+        peak += pool.getPeakUsage().getUsed();
+      }
+    }
+    return peak;
+  }
+
+  static void writeJson(Report report, Writer out) throws IOException {
+    Gson gson = new GsonBuilder().setPrettyPrinting().serializeNulls().create();
+    gson.toJson(report, out);
+    out.write(System.lineSeparator());
+  }
+
+  static final String[] CSV_COLUMNS = {"type", "record", "ok", "partial", "error", "nthreads", "powRadix", "wallSecs",
+          "peakHeapBytes", "ballotsPerSec", "ballotId", "state", "cached", "contestId", "selectionId", "problem"};
+
+  /**
+   * One table, with the record type in the first column: a summary row, an aggregationMismatch row for each
+   * mismatch between the encrypted tally and the ballots, a retally row and a retallyMismatch row for each
+   * mismatch if it was re-tallied, then a ballot row for each ballot result. Unused columns are empty.
+   */
+  static void writeCsv(Report report, Writer out) throws IOException {
+    Formatter f = new Formatter(out);
+    f.format("%s%n", String.join(",", CSV_COLUMNS));
+    csvRow(f, "summary", report.record, String.valueOf(report.ok), String.valueOf(report.partial), report.error,
+            String.valueOf(report.nthreads), report.powRadix, String.format("%.3f", report.wallSecs), String.valueOf(report.peakHeapBytes),
+            String.format("%.1f", report.ballotsPerSec), null, null, null, null, null, null);
+    if (report.retallyOk != null) {
+      csvRow(f, "retally", report.record, String.valueOf(report.retallyOk), null, null, null, null, null, null,
+              String.format("%.1f", report.retallyBallotsPerSec), null, null, null, null, null, null);
+    }
+    for (ReTally.Mismatch mismatch : report.aggregationMismatches) {
+      csvRow(f, "aggregationMismatch", report.record, "false", null, null, null, null, null, null, null, null, null,
+              null, mismatch.contestId(), mismatch.selectionId(), mismatch.problem());
+    }
+    if (report.retallyMismatches != null) {
+      for (ReTally.Mismatch mismatch : report.retallyMismatches) {
+        csvRow(f, "retallyMismatch", report.record, "false", null, null, null, null, null, null, null, null, null, null,
+                mismatch.contestId(), mismatch.selectionId(), mismatch.problem());
+      }
+    }
+    for (VerificationRun.BallotResult ballot : report.ballots) {
+      csvRow(f, "ballot", report.record, String.valueOf(ballot.ok()), null, null, null, null, null, null, null,
+              ballot.ballotId(), ballot.state(), String.valueOf(ballot.cached()), null, null, null);
+    }
+    f.flush();
+  }
+
+  private static void csvRow(Formatter f, String... values) {
+    if (values.length != CSV_COLUMNS.length) {
+      throw new IllegalArgumentException("CSV row has " + values.length + " values, not " + CSV_COLUMNS.length);
+    }
+    StringBuilder row = new StringBuilder();
+    for (String value : values) {
+      if (row.length() > 0) {
+        row.append(',');
+      }
+      row.append(csv(value));
+    }
+    f.format("%s%n", row);
+  }
+
+  private static String csv(String value) {
+    if (value == null) {
+      return "";
+    }
+    if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
+      return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+    return value;
+  }
+}
@@ -5,6 +5,7 @@
 
 package electionguard.viewer;
 
+import electionguard.core.PowRadixOption;
 import ucar.ui.prefs.Debug;
 import ucar.ui.widget.BAMutil;
 import ucar.util.prefs.PreferencesExt;
@@ -19,6 +20,7 @@ import java.io.IOException;
 /** ElectionRecord Viewer main program. */
 public class ViewerMain extends JPanel {
   public static final String FRAME_SIZE = "FrameSize";
+  public static final String POW_RADIX = "PowRadixOption";
 
   private static JFrame frame;
   private static PreferencesExt prefs;
@@ -53,6 +55,10 @@ public class ViewerMain extends JPanel {
 
     Rectangle bounds = frame.getBounds();
     prefs.putBeanObject(FRAME_SIZE, bounds);
+    PowRadixOption powRadix = KUtils.chosenPowRadixOption(); // not the default for this heap, which may change
+    if (powRadix != null) {
+      prefs.put(POW_RADIX, powRadix.name());
+    }
     try {
       store.save();
     } catch (IOException ioe) {
@@ -77,6 +83,19 @@ public class ViewerMain extends JPanel {
       System.out.println("XMLStore Creation failed " + e);
     }
 
+    // the shared GroupContext is made on first use, so choose its PowRadix tables before any panel is made
+    if (prefs != null) {
+      String powRadix = prefs.get(POW_RADIX, null);
+      if (powRadix != null) {
+        try {
+          KUtils.setPowRadixOption(PowRadixOption.valueOf(powRadix));
+        } catch (IllegalArgumentException e) {
+          System.out.println("Ignoring unknown " + POW_RADIX + " preference " + powRadix);
+          prefs.remove(POW_RADIX);
+        }
+      }
+    }
+
     // put UI in a JFrame
     frame = new JFrame("ElectionRecord Viewer");
     ui = new ViewerMain(prefs);
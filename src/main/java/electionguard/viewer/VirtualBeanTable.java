@@ -0,0 +1,125 @@
+package electionguard.viewer;
+
+import ucar.ui.prefs.BeanTable;
+import ucar.ui.table.UndoableRowSorter;
+import ucar.util.prefs.PreferencesExt;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * A BeanTable whose rows are lightweight keys of type R, rather than beans. A bean is made from its key only
+ * when its row is painted or selected, and the most recently used beans are kept in a small LRU window.
+ * Beans should cache their formatted values, so that repainting a row doesn't reformat it.
+ * Use setRows / addRows / getSelectedBean; the BeanTable bean list methods are not used.
+ * Sorting on a column still has to make a bean for every row.
+ */
+class VirtualBeanTable<R, T> extends BeanTable<T> {
+  private static final int WINDOW = 512;
+
+  private final Function<R, T> beanMaker;
+  private final List<R> rows = new ArrayList<>();
+  private final Map<Integer, T> window = new LinkedHashMap<>(WINDOW * 2, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Integer, T> eldest) {
+      return size() > WINDOW;
+    }
+  };
+
+  VirtualBeanTable(Class<T> beanClass, PreferencesExt prefs, String header, String tooltip, Function<R, T> beanMaker) {
+    super(beanClass, prefs, false, header, tooltip, null);
+    this.beanMaker = beanMaker;
+    this.model = new VirtualModel(beanClass);
+    jtable.setModel(model);
+    jtable.setRowSorter(new UndoableRowSorter<>(model));
+  }
+
+  void setRows(List<R> newRows) {
+    rows.clear();
+    rows.addAll(newRows);
+    window.clear();
+    model.fireTableDataChanged();
+    revalidate();
+  }
+
+  void addRows(List<R> moreRows) {
+    if (moreRows.isEmpty()) {
+      return;
+    }
+    int first = rows.size();
+    rows.addAll(moreRows);
+    model.fireTableRowsInserted(first, rows.size() - 1);
+  }
+
+  /**
+   * Replace the rows with the same id as one of the new rows, repainting only those, and append the rest.
+   * Scans the rows once, so it should be called with batches rather than single rows.
+   */
+  void updateRows(List<R> newRows, Function<R, ?> id) {
+    Map<Object, R> byId = new LinkedHashMap<>();
+    for (R row : newRows) {
+      byId.put(id.apply(row), row);
+    }
+    for (int i = 0; i < rows.size() && !byId.isEmpty(); i++) {
+      R replacement = byId.remove(id.apply(rows.get(i)));
+      if (replacement != null) {
+        rows.set(i, replacement);
+        window.remove(i);
+        model.fireTableRowsUpdated(i, i);
+      }
+    }
+    addRows(new ArrayList<>(byId.values()));
+  }
+
+  int rowCount() {
+    return rows.size();
+  }
+
+  /** The bean for a row of the model, made from its key if it is not in the window. */
+  @Nullable
+  T bean(int modelRow) {
+    if (modelRow < 0 || modelRow >= rows.size()) {
+      return null;
+    }
+    return window.computeIfAbsent(modelRow, row -> beanMaker.apply(rows.get(row)));
+  }
+
+  @Override
+  public T getSelectedBean() {
+    int viewRow = jtable.getSelectedRow();
+    return viewRow < 0 ? null : bean(jtable.convertRowIndexToModel(viewRow));
+  }
+
+  @Override
+  public List<T> getSelectedBeans() {
+    List<T> result = new ArrayList<>();
+    for (int viewRow : jtable.getSelectedRows()) {
+      T bean = bean(jtable.convertRowIndexToModel(viewRow));
+      if (bean != null) {
+        result.add(bean);
+      }
+    }
+    return result;
+  }
+
+  private class VirtualModel extends TableBeanModel {
+    VirtualModel(Class<?> beanClass) {
+      super(beanClass);
+    }
+
+    @Override
+    public int getRowCount() {
+      return rows.size();
+    }
+
+    @Override
+    public Object getValueAt(int row, int col) {
+      T bean = bean(row);
+      return bean == null ? null : getValueAt(bean, col);
+    }
+  }
+}
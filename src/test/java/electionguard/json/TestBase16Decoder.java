@@ -0,0 +1,93 @@
+package electionguard.json;
+
+import electionguard.core.ElementModP;
+import electionguard.core.ElementModQ;
+import electionguard.core.GroupContext;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.HexFormat;
+import java.util.function.Supplier;
+
+import static com.google.common.truth.Truth.assertThat;
+import static electionguard.core.GroupCommonKt.safeBase16ToElementModP;
+import static electionguard.core.GroupCommonKt.safeBase16ToElementModQ;
+import static electionguard.viewer.KUtils.productionGroup;
+
+public class TestBase16Decoder {
+  GroupContext group = productionGroup();
+  String p = HexFormat.of().formatHex(group.getConstants().getLargePrime());
+  String q = HexFormat.of().formatHex(group.getConstants().getSmallPrime());
+
+  @Test
+  public void testDecode() {
+    byte[] dest = new byte[4];
+    assertThat(Base16Decoder.decode("0aBc", dest)).isTrue();
+    assertThat(dest).isEqualTo(new byte[] {0, 0, 0x0a, (byte) 0xbc});
+
+    // odd length: the first digit is the low nibble of its own byte
+    assertThat(Base16Decoder.decode("abc", dest)).isTrue();
+    assertThat(dest).isEqualTo(new byte[] {0, 0, 0x0a, (byte) 0xbc});
+
+    // the leading bytes left over from the last decode are zeroed
+    assertThat(Base16Decoder.decode("1", dest)).isTrue();
+    assertThat(dest).isEqualTo(new byte[] {0, 0, 0, 1});
+
+    assertThat(Base16Decoder.decode("", dest)).isFalse();
+    assertThat(Base16Decoder.decode("123456789", dest)).isFalse();
+    assertThat(Base16Decoder.decode("12g4", dest)).isFalse();
+    assertThat(Base16Decoder.decode("12 4", dest)).isFalse();
+    assertThat(Base16Decoder.decode("-124", dest)).isFalse();
+    assertThat(Base16Decoder.decode("12\u00e94", dest)).isFalse();
+  }
+
+  @Test
+  public void testElementModQ() {
+    for (String hex : new String[] {"0", "1", "abc", "ABC", "00ff", "7FFFFFFF", q.substring(1), minus1(q)}) {
+      ElementModQ element = Base16Decoder.toElementModQ(group, hex);
+      assertThat(element).isNotNull();
+      assertThat(element).isEqualTo(safeBase16ToElementModQ(group, hex));
+    }
+  }
+
+  @Test
+  public void testElementModP() {
+    for (String hex : new String[] {"0", "1", "abc", "ABC", "00ff", p.substring(1), minus1(p)}) {
+      ElementModP element = Base16Decoder.toElementModP(group, hex);
+      assertThat(element).isNotNull();
+      assertThat(element).isEqualTo(safeBase16ToElementModP(group, hex));
+    }
+  }
+
+  /** Anything the fast path rejects gives what safeBase16ToElementModP/Q gives. */
+  @Test
+  public void testFallback() {
+    String tooLongQ = "00" + q; // decode() rejects it, but its value is q
+    String tooLongP = "00" + p;
+    for (String hex : new String[] {q, plus1(q), tooLongQ, "00" + "1".repeat(64), "xyz", "12g4", "-1"}) {
+      assertThat(outcome(() -> Base16Decoder.toElementModQ(group, hex)))
+              .isEqualTo(outcome(() -> safeBase16ToElementModQ(group, hex)));
+    }
+    for (String hex : new String[] {p, plus1(p), tooLongP, q, "xyz", "12g4", "-1"}) {
+      assertThat(outcome(() -> Base16Decoder.toElementModP(group, hex)))
+              .isEqualTo(outcome(() -> safeBase16ToElementModP(group, hex)));
+    }
+  }
+
+  /** The result, or the class of the exception thrown, so a rejected value compares equal however it is rejected. */
+  private static Object outcome(Supplier<?> conversion) {
+    try {
+      return conversion.get();
+    } catch (RuntimeException e) {
+      return e.getClass();
+    }
+  }
+
+  private static String minus1(String hex) {
+    return new BigInteger(hex, 16).subtract(BigInteger.ONE).toString(16);
+  }
+
+  private static String plus1(String hex) {
+    return new BigInteger(hex, 16).add(BigInteger.ONE).toString(16);
+  }
+}
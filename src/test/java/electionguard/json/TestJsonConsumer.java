@@ -1,5 +1,8 @@
 package electionguard.json;
 
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import electionguard.ballot.DecryptingGuardian;
 import electionguard.ballot.ElectionConstants;
 import electionguard.ballot.EncryptedBallot;
@@ -11,13 +14,22 @@ import electionguard.publish.ElectionRecord;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.ClosedFileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Formatter;
+import java.util.List;
+import java.util.stream.Stream;
 
 import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static electionguard.viewer.KUtils.productionGroup;
 
 public class TestJsonConsumer {
-  String topdir = "/home/snake/tmp/electionguard/electionRecord25May2022";
+  String topdir = Path.of("src/test/data/electionRecord25May2022").toAbsolutePath().toString();
 
   @Test
   public void testJsonManifest() throws IOException {
@@ -70,6 +82,44 @@ public class TestJsonConsumer {
     }
   }
 
+  @Test
+  public void testReadEncryptedBallotsParallel() throws Exception {
+    JsonConsumer consumer = new JsonConsumer(topdir);
+    List<EncryptedBallot> sequential = new ArrayList<>();
+    consumer.iteratorEncryptedBallots().forEach(sequential::add);
+    assertThat(sequential).isNotEmpty();
+
+    assertThat(consumer.readEncryptedBallots(4)).containsExactlyElementsIn(sequential).inOrder();
+    List<EncryptedBallot> handled = Collections.synchronizedList(new ArrayList<>());
+    consumer.readEncryptedBallots(4, handled::add);
+    assertThat(handled).containsExactlyElementsIn(sequential);
+  }
+
+  @Test
+  public void testEncryptedBallotTypeAdapter() throws IOException {
+    List<Path> ballotPaths;
+    try (Stream<Path> paths = new JsonElectionRecordPath(Path.of(topdir)).ballotPaths()) {
+      ballotPaths = paths.toList();
+    }
+    assertThat(ballotPaths).isNotEmpty();
+    for (Path ballotPath : ballotPaths) {
+      JsonObject json;
+      try (Reader reader = Files.newBufferedReader(ballotPath)) {
+        json = JsonParser.parseReader(reader).getAsJsonObject();
+      }
+      EncryptedBallot expected = EncryptedBallotPojo.deserializeByBinding(json);
+      EncryptedBallot ballot = JsonConsumer.readEncryptedBallot(ballotPath);
+      assertThat(ballot.getBallotId()).isEqualTo(expected.getBallotId());
+      assertThat(ballot.getCryptoHash()).isEqualTo(expected.getCryptoHash());
+      assertThat(ballot.getContests()).isEqualTo(expected.getContests());
+      assertThat(ballot).isEqualTo(expected);
+
+      json.add("timestamp", JsonNull.INSTANCE);
+      assertThat(EncryptedBallotPojo.deserialize(json).getTimestamp()).isEqualTo(0);
+      assertThat(EncryptedBallotPojo.deserializeByBinding(json).getTimestamp()).isEqualTo(0);
+    }
+  }
+
   @Test
   public void testJsonEncryptedTally() throws IOException {
     JsonConsumer consumer = new JsonConsumer(topdir);
@@ -99,4 +149,187 @@ public class TestJsonConsumer {
       assertThat(tally).isNotNull();
     }
   }
+
+  @Test
+  public void testBallotSnapshot() throws IOException {
+    Path cacheDir = Files.createTempDirectory("snapshots");
+    JsonConsumer consumer = new JsonConsumer(topdir, cacheDir);
+    List<EncryptedBallot> fromJson = new ArrayList<>();
+    new JsonConsumer(topdir).iteratorEncryptedBallots().forEach(fromJson::add);
+
+    List<EncryptedBallot> fromSnapshot = new ArrayList<>();
+    consumer.iteratorEncryptedBallots().forEach(fromSnapshot::add);
+    assertThat(fromSnapshot).hasSize(fromJson.size());
+    for (int i = 0; i < fromJson.size(); i++) {
+      assertThat(fromSnapshot.get(i).getBallotId()).isEqualTo(fromJson.get(i).getBallotId());
+      assertThat(fromSnapshot.get(i).getCryptoHash()).isEqualTo(fromJson.get(i).getCryptoHash());
+      assertThat(fromSnapshot.get(i).getContests()).isEqualTo(fromJson.get(i).getContests());
+    }
+
+    Path snapshotPath = new BallotSnapshot(cacheDir, new JsonElectionRecordPath(Path.of(topdir))).snapshotPath();
+    assertThat(Files.exists(snapshotPath)).isTrue();
+    BallotSnapshot.evict(cacheDir, BallotSnapshot.MAX_CACHE_BYTES);
+    assertThat(Files.exists(snapshotPath)).isTrue();
+    BallotSnapshot.evict(cacheDir, 0);
+    try (Stream<Path> left = Files.list(cacheDir)) {
+      assertThat(left.toList()).isEmpty();
+    }
+  }
+
+  /** The digest covers the proofs, which the crypto_hash does not. */
+  @Test
+  public void testBallotDigest() throws IOException {
+    Path ballotPath = Path.of(topdir, JsonElectionRecordPath.SUBMITTED_BALLOTS_DIR, "submitted_ballot_9402450000000000231.json");
+    JsonObject json;
+    try (Reader reader = Files.newBufferedReader(ballotPath)) {
+      json = JsonParser.parseReader(reader).getAsJsonObject();
+    }
+    EncryptedBallot ballot = EncryptedBallotPojo.deserialize(json);
+    assertThat(BallotSnapshot.digest(ballot)).isEqualTo(BallotSnapshot.digest(JsonConsumer.readEncryptedBallot(ballotPath)));
+
+    JsonObject proof = json.getAsJsonArray("contests").get(0).getAsJsonObject()
+            .getAsJsonArray("ballot_selections").get(0).getAsJsonObject()
+            .getAsJsonObject("proof");
+    proof.addProperty("proof_zero_response", "01");
+    EncryptedBallot tampered = EncryptedBallotPojo.deserialize(json);
+    assertThat(tampered.getCryptoHash()).isEqualTo(ballot.getCryptoHash());
+    assertThat(BallotSnapshot.digest(tampered)).isNotEqualTo(BallotSnapshot.digest(ballot));
+  }
+
+  @Test
+  public void testBallotIndex() throws IOException {
+    JsonConsumer consumer = new JsonConsumer(topdir, Files.createTempDirectory("snapshots"));
+    BallotIndex index = consumer.ballotIndex();
+    assertThat(index).isNotNull();
+    for (EncryptedBallot ballot : new JsonConsumer(topdir).iteratorEncryptedBallots()) {
+      BallotIndex.Entry entry = index.find(ballot.getBallotId());
+      assertThat(entry).isNotNull();
+      assertThat(entry.styleId()).isEqualTo(ballot.getBallotStyleId());
+      EncryptedBallot found = consumer.findEncryptedBallot(ballot.getBallotId());
+      assertThat(found.getCryptoHash()).isEqualTo(ballot.getCryptoHash());
+    }
+    assertThat(index.find("no-such-ballot")).isNull();
+  }
+
+  @Test
+  public void testSnapshotCheckedOnce() throws IOException {
+    Path copy = copyRecord();
+    JsonConsumer consumer = new JsonConsumer(copy.toString(), Files.createTempDirectory("snapshots"));
+    BallotIndex index = consumer.ballotIndex();
+    assertThat(index).isNotNull();
+
+    // a ballot added after the snapshot was checked is found from its JSON file, without rewriting the snapshot
+    Path ballotsDir = copy.resolve(JsonElectionRecordPath.SUBMITTED_BALLOTS_DIR);
+    String json = Files.readString(ballotsDir.resolve("submitted_ballot_9402450000000000231.json"));
+    Files.writeString(ballotsDir.resolve("submitted_ballot_added.json"), json.replace("9402450000000000231", "added"));
+    assertThat(consumer.ballotIndex()).isSameInstanceAs(index);
+    assertThat(consumer.findEncryptedBallot("added")).isNotNull();
+
+    consumer.refreshSnapshot();
+    assertThat(consumer.ballotIndex().find("added")).isNotNull();
+  }
+
+  /** Copy the JSON files of the test record to a temporary directory, which the test may change. */
+  private Path copyRecord() throws IOException {
+    Path copy = Files.createTempDirectory("record");
+    try (Stream<Path> files = Files.walk(Path.of(topdir))) {
+      for (Path file : files.filter(file -> file.toString().endsWith(".json")).toList()) {
+        Path target = copy.resolve(Path.of(topdir).relativize(file));
+        Files.createDirectories(target.getParent());
+        Files.copy(file, target);
+      }
+    }
+    return copy;
+  }
+
+  @Test
+  public void testBallotFilter() throws IOException {
+    JsonConsumer consumer = new JsonConsumer(topdir);
+    int ncast = 0;
+    for (EncryptedBallot ballot : consumer.iteratorEncryptedBallots()) {
+      if (ballot.getState() == EncryptedBallot.BallotState.CAST) {
+        ncast++;
+      }
+    }
+    int nfiltered = 0;
+    for (EncryptedBallot ballot : consumer.iteratorEncryptedBallots(BallotFilter.byState(EncryptedBallot.BallotState.CAST))) {
+      assertThat(ballot.getState()).isEqualTo(EncryptedBallot.BallotState.CAST);
+      nfiltered++;
+    }
+    assertThat(nfiltered).isEqualTo(ncast);
+
+    // a filtered read doesn't write a missing snapshot, and reads through the index once there is one
+    Path cacheDir = Files.createTempDirectory("snapshots");
+    JsonConsumer snapshots = new JsonConsumer(topdir, cacheDir);
+    BallotFilter cast = BallotFilter.byState(EncryptedBallot.BallotState.CAST);
+    assertThat(snapshots.iteratorEncryptedBallots(cast)).hasSize(ncast);
+    try (Stream<Path> files = Files.list(cacheDir)) {
+      assertThat(files.toList()).isEmpty();
+    }
+    assertThat(snapshots.ballotIndex()).isNotNull();
+    assertThat(snapshots.iteratorEncryptedBallots(cast)).hasSize(ncast);
+  }
+
+  @Test
+  public void testZipRecord() throws IOException {
+    String zip = Path.of(topdir, "electionrecord25May2022.zip").toString();
+    JsonConsumer consumer = new JsonConsumer(zip, Files.createTempDirectory("snapshots"));
+    assertThat(consumer.isValidElectionRecord(new Formatter())).isTrue();
+    assertThat(consumer.readManifest()).isNotNull();
+    assertThat(consumer.readEncryptedTally()).isNotNull();
+    assertThat(consumer.readGuardians()).hasSize(2);
+    assertThat(consumer.ballotIndex()).isNull();
+
+    List<String> fromDir = new ArrayList<>();
+    new JsonConsumer(topdir).iteratorEncryptedBallots().forEach(ballot -> fromDir.add(ballot.getBallotId()));
+    List<String> fromZip = new ArrayList<>();
+    consumer.iteratorEncryptedBallots().forEach(ballot -> fromZip.add(ballot.getBallotId()));
+    assertThat(fromZip).containsExactlyElementsIn(fromDir);
+
+    // the zip is shared, and closed with the last consumer that reads it
+    JsonConsumer other = new JsonConsumer(zip);
+    consumer.close();
+    assertThat(other.readManifest()).isNotNull();
+    other.close();
+    other.close(); // a second close does nothing
+    assertThrows(ClosedFileSystemException.class, () -> other.ballotFileCount());
+    try (JsonConsumer reopened = new JsonConsumer(zip)) {
+      assertThat(reopened.ballotFileCount()).isEqualTo(fromDir.size());
+    }
+  }
+
+  @Test
+  public void testBallotColumns() throws IOException {
+    List<EncryptedBallot> ballots = new ArrayList<>();
+    new JsonConsumer(topdir).iteratorEncryptedBallots().forEach(ballots::add);
+    Path file = Files.createTempDirectory("columns").resolve("ballots" + BallotColumns.SUFFIX);
+    long nrows = BallotColumns.write(ballots, file);
+    assertThat(nrows).isEqualTo(ballots.stream()
+            .flatMap(ballot -> ballot.getContests().stream())
+            .mapToLong(contest -> contest.getSelections().size())
+            .sum());
+
+    BallotColumns.Reader reader = new BallotColumns.Reader(file);
+    assertThat(reader.rows()).isEqualTo(nrows);
+    assertThat(reader.ballots()).isEqualTo(ballots.size());
+    List<String> ids = new ArrayList<>();
+    reader.scanStrings(BallotColumns.Column.BALLOT_ID, ids::add);
+    assertThat(ids).hasSize(ballots.size());
+    assertThat(ids.get(0)).isEqualTo(ballots.get(0).getBallotId());
+    List<Integer> states = new ArrayList<>();
+    reader.scanInts(BallotColumns.Column.STATE, states::add);
+    assertThat(states.get(0)).isEqualTo(ballots.get(0).getState() == EncryptedBallot.BallotState.CAST ? 1 : 2);
+
+    // each selection row points to its ballot's row
+    List<Integer> ballotRows = new ArrayList<>();
+    reader.scanInts(BallotColumns.Column.BALLOT_ROW, ballotRows::add);
+    assertThat(ballotRows).hasSize((int) nrows);
+    assertThat(ballotRows).isInOrder();
+    assertThat(ballotRows.get(0)).isEqualTo(0);
+    assertThat(ballotRows.get((int) nrows - 1)).isEqualTo(ballots.size() - 1);
+
+    EncryptedBallot.Selection first = ballots.get(0).getContests().get(0).getSelections().get(0);
+    ElementModP pad = productionGroup().binaryToElementModP(reader.read(BallotColumns.Column.PAD, 0));
+    assertThat(pad).isEqualTo(first.getCiphertext().getPad());
+  }
 }
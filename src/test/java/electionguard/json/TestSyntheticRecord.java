@@ -0,0 +1,58 @@
+package electionguard.json;
+
+import electionguard.ballot.EncryptedBallot;
+import electionguard.publish.ElectionRecord;
+import electionguard.verifier.Verifier;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class TestSyntheticRecord {
+
+  @Test
+  public void testVerify() throws Exception {
+    Path dir = Files.createTempDirectory("synthetic");
+    new SyntheticRecord(dir, 2, 3, 2, 2).generate(6, 2, 0, 2);
+
+    JsonConsumer consumer = new JsonConsumer(dir.toString());
+    ElectionRecord record = consumer.readElectionRecord();
+    assertThat(consumer.readEncryptedBallots()).hasSize(8);
+    assertThat(new Verifier(record, 2).verify(false)).isTrue();
+  }
+
+  @Test
+  public void testHashedSubdirs() throws Exception {
+    Path dir = Files.createTempDirectory("synthetic");
+    SyntheticRecord generator = new SyntheticRecord(dir, 1, 2, 1, 1);
+    generator.setHashedSubdirs(true);
+    generator.generate(5, 0, 0, 2);
+
+    // only ballot files, in the hashed subdirectories, are listed
+    JsonElectionRecordPath paths = new JsonElectionRecordPath(dir);
+    Files.createDirectories(paths.ballotsDirPath().resolve("other").resolve("ab"));
+    Files.writeString(paths.ballotsDirPath().resolve("notes.txt"), "not a ballot");
+    List<Path> ballotPaths;
+    try (Stream<Path> listed = paths.ballotPaths()) {
+      ballotPaths = listed.toList();
+    }
+    assertThat(ballotPaths).hasSize(5);
+    for (Path path : ballotPaths) {
+      String name = path.getFileName().toString();
+      String id = name.substring("submitted_ballot_".length(), name.length() - ".json".length());
+      assertThat(path.getParent().getFileName().toString()).isEqualTo(JsonElectionRecordPath.hashedSubdir(id));
+    }
+
+    JsonConsumer consumer = new JsonConsumer(dir.toString());
+    assertThat(consumer.ballotFileCount()).isEqualTo(5);
+    List<EncryptedBallot> ballots = consumer.readEncryptedBallots();
+    assertThat(ballots).hasSize(5);
+    for (EncryptedBallot ballot : ballots) {
+      assertThat(consumer.findEncryptedBallot(ballot.getBallotId())).isNotNull();
+    }
+  }
+}
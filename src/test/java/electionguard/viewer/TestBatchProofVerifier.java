@@ -0,0 +1,70 @@
+package electionguard.viewer;
+
+import electionguard.ballot.EncryptedBallot;
+import electionguard.core.ElementModP;
+import electionguard.core.GroupContext;
+import electionguard.json.JsonConsumer;
+import electionguard.json.SelectionProof;
+import electionguard.publish.ElectionRecord;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+import static electionguard.viewer.KUtils.productionGroup;
+
+public class TestBatchProofVerifier {
+  String topdir = Path.of("src/test/data/electionRecord25May2022").toAbsolutePath().toString();
+  GroupContext group = productionGroup();
+
+  @Test
+  public void testBatchProofs() throws IOException {
+    JsonConsumer consumer = new JsonConsumer(topdir);
+    ElectionRecord record = consumer.readElectionRecord();
+    List<SelectionProof> proofs = new ArrayList<>();
+    for (JsonConsumer.BallotProofs ballot : consumer.iteratorBallotProofs()) {
+      assertThat(ballot.proofs()).hasSize(countSelections(ballot.ballot()));
+      proofs.addAll(ballot.proofs());
+    }
+    assertThat(proofs.size()).isGreaterThan(2);
+
+    BatchProofVerifier verifier = new BatchProofVerifier(record, group);
+    assertThat(verifier.failures(proofs)).isEmpty();
+
+    // the responses of one proof swapped: its challenges still hash right, but the equations don't hold
+    List<SelectionProof> tampered = new ArrayList<>(proofs);
+    SelectionProof bad = swapResponses(proofs.get(1));
+    tampered.set(1, bad);
+    assertThat(verifier.failures(tampered)).containsExactly(bad);
+
+    // a ciphertext with a component of order 2, which the Jacobi check rejects
+    SelectionProof outside = withPad(proofs.get(2), proofs.get(2).pad().times(minusOne()));
+    tampered.set(2, outside);
+    assertThat(verifier.failures(tampered)).containsExactly(bad, outside);
+  }
+
+  private static int countSelections(EncryptedBallot ballot) {
+    return ballot.getContests().stream().mapToInt(contest -> contest.getSelections().size()).sum();
+  }
+
+  private static SelectionProof swapResponses(SelectionProof p) {
+    return new SelectionProof(p.ballotId(), p.contestId(), p.selectionId(), p.pad(), p.data(),
+            p.zeroPad(), p.zeroData(), p.onePad(), p.oneData(),
+            p.zeroChallenge(), p.oneResponse(), p.oneChallenge(), p.zeroResponse(), p.challenge());
+  }
+
+  private static SelectionProof withPad(SelectionProof p, ElementModP pad) {
+    return new SelectionProof(p.ballotId(), p.contestId(), p.selectionId(), pad, p.data(),
+            p.zeroPad(), p.zeroData(), p.onePad(), p.oneData(),
+            p.zeroChallenge(), p.zeroResponse(), p.oneChallenge(), p.oneResponse(), p.challenge());
+  }
+
+  private ElementModP minusOne() {
+    BigInteger p = new BigInteger(1, group.getConstants().getLargePrime());
+    return group.binaryToElementModP(p.subtract(BigInteger.ONE).toByteArray());
+  }
+}
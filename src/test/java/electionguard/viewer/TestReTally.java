@@ -0,0 +1,153 @@
+package electionguard.viewer;
+
+import electionguard.ballot.EncryptedTally;
+import electionguard.core.ElGamalCiphertext;
+import electionguard.core.ElementModP;
+import electionguard.core.GroupContext;
+import electionguard.json.JsonConsumer;
+import electionguard.publish.ElectionRecord;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Formatter;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import static com.google.common.truth.Truth.assertThat;
+import static electionguard.viewer.KUtils.productionGroup;
+
+public class TestReTally {
+  String topdir = Path.of("src/test/data/electionRecord25May2022").toAbsolutePath().toString();
+  GroupContext group = productionGroup();
+
+  @Test
+  public void testReTally() throws IOException, InterruptedException {
+    JsonConsumer consumer = new JsonConsumer(topdir);
+    ElectionRecord record = consumer.readElectionRecord();
+    EncryptedTally expected = record.encryptedTally();
+    assertThat(expected).isNotNull();
+
+    ReTally.Accumulator actual = new ReTally(2).accumulate(record, consumer);
+    assertThat(actual.nballots()).isGreaterThan(0);
+    assertThat(ReTally.compare(expected, actual)).isEmpty();
+
+    // a selection on no CAST ballot matches if it is the encryption of zero
+    ElementModP one = group.binaryToElementModP(new byte[] {1});
+    EncryptedTally.Contest first = expected.getContests().get(0);
+    EncryptedTally withZero = replace(expected, first.getContestId(), null,
+            new EncryptedTally.Selection("unvoted", 99, first.getContestDescriptionHash(), new ElGamalCiphertext(one, one)));
+    assertThat(ReTally.compare(withZero, actual)).isEmpty();
+
+    // and is reported if it is anything else
+    ElementModP pad = first.getSelections().get(0).getCiphertext().getPad();
+    EncryptedTally withOther = replace(expected, first.getContestId(), null,
+            new EncryptedTally.Selection("unvoted", 99, first.getContestDescriptionHash(), new ElGamalCiphertext(pad, one)));
+    assertThat(ReTally.compare(withOther, actual))
+            .containsExactly(new ReTally.Mismatch(first.getContestId(), "unvoted",
+                    "not in any CAST ballot, but not an encryption of zero"));
+
+    // a perturbed ciphertext
+    EncryptedTally.Selection selection = first.getSelections().get(0);
+    ElGamalCiphertext text = selection.getCiphertext();
+    EncryptedTally perturbed = replace(expected, first.getContestId(), selection.getSelectionId(),
+            new EncryptedTally.Selection(selection.getSelectionId(), selection.getSequenceOrder(),
+                    selection.getSelectionDescriptionHash(), new ElGamalCiphertext(text.getData(), text.getPad())));
+    assertThat(ReTally.compare(perturbed, actual))
+            .containsExactly(new ReTally.Mismatch(first.getContestId(), selection.getSelectionId(), "ciphertext differs"));
+  }
+
+  @Test
+  public void testTarGz() throws IOException, InterruptedException {
+    JsonConsumer consumer = new JsonConsumer(topdir);
+    ReTally.Accumulator fromDir = new ReTally(2).accumulate(consumer.readElectionRecord(), consumer);
+
+    Path archive = writeTarGz(Path.of(topdir));
+    ReTally.TarGzTally tally = new ReTally(2).accumulate(archive);
+    assertThat(tally.expected()).isNotNull();
+    assertThat(tally.actual().nballots()).isEqualTo(fromDir.nballots());
+    assertThat(ReTally.compare(tally.expected(), tally.actual())).isEmpty();
+    assertThat(new ReTally(2).check(archive, new Formatter())).isTrue();
+  }
+
+  @Test
+  public void testShardsOfZip() throws IOException, InterruptedException {
+    String zip = Path.of(topdir, "electionrecord25May2022.zip").toString();
+    JsonConsumer consumer = new JsonConsumer(topdir);
+    EncryptedTally expected = consumer.readEncryptedTally();
+    ReTally.Accumulator merged = new ReTally.Accumulator();
+    for (int shard = 0; shard < 2; shard++) {
+      ShardedReTally.Partial partial = ShardedReTally.runShard(zip, shard, 2, 2);
+      merged.merge(partial.tally(), partial.nballots());
+    }
+    assertThat(merged.nballots()).isEqualTo(new ReTally(2).accumulate(consumer.readElectionRecord(), consumer).nballots());
+    assertThat(ReTally.compare(expected, merged)).isEmpty();
+  }
+
+  /** Write the JSON files of a record to a .tar.gz, under its directory name, as a minimal ustar archive. */
+  private static Path writeTarGz(Path record) throws IOException {
+    Path archive = Files.createTempDirectory("targz").resolve("record.tar.gz");
+    try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(archive));
+         Stream<Path> files = Files.walk(record)) {
+      for (Path file : files.filter(file -> file.toString().endsWith(".json")).sorted().toList()) {
+        String name = record.getParent().relativize(file).toString().replace('\\', '/');
+        byte[] contents = Files.readAllBytes(file);
+        byte[] header = new byte[512];
+        put(header, 0, name);
+        put(header, 100, "0000644");
+        put(header, 108, "0000000");
+        put(header, 116, "0000000");
+        put(header, 124, String.format("%011o", contents.length));
+        put(header, 136, String.format("%011o", 0));
+        header[156] = '0';
+        put(header, 257, "ustar");
+        put(header, 263, "00");
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        int checksum = 0;
+        for (byte b : header) {
+          checksum += b & 0xff;
+        }
+        put(header, 148, String.format("%06o", checksum));
+        header[154] = 0;
+        out.write(header);
+        out.write(contents);
+        out.write(new byte[(512 - contents.length % 512) % 512]);
+      }
+      out.write(new byte[1024]);
+    }
+    return archive;
+  }
+
+  private static void put(byte[] header, int offset, String value) {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    System.arraycopy(bytes, 0, header, offset, bytes.length);
+  }
+
+  /** The tally with the selection of that id in the contest replaced, or added if selectionId is null. */
+  private static EncryptedTally replace(EncryptedTally tally, String contestId, String selectionId,
+                                        EncryptedTally.Selection replacement) {
+    List<EncryptedTally.Contest> contests = new ArrayList<>();
+    for (EncryptedTally.Contest contest : tally.getContests()) {
+      if (!contest.getContestId().equals(contestId)) {
+        contests.add(contest);
+        continue;
+      }
+      List<EncryptedTally.Selection> selections = new ArrayList<>();
+      for (EncryptedTally.Selection selection : contest.getSelections()) {
+        selections.add(selection.getSelectionId().equals(selectionId) ? replacement : selection);
+      }
+      if (selectionId == null) {
+        selections.add(replacement);
+      }
+      contests.add(new EncryptedTally.Contest(contest.getContestId(), contest.getSequenceOrder(),
+              contest.getContestDescriptionHash(), selections));
+    }
+    return new EncryptedTally(tally.getTallyId(), contests);
+  }
+}
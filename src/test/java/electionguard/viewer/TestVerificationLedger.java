@@ -0,0 +1,81 @@
+package electionguard.viewer;
+
+import electionguard.json.JsonConsumer;
+import electionguard.publish.ElectionRecord;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class TestVerificationLedger {
+  String topdir = Path.of("src/test/data/electionRecord25May2022").toAbsolutePath().toString();
+
+  @Test
+  public void testIncremental() throws IOException {
+    Path record = copyRecord();
+    Path ledgerDir = Files.createTempDirectory("ledger");
+
+    // the first run checks every ballot, and verifies the whole record
+    VerificationRun first = run(record, ledgerDir);
+    assertThat(first.ballotResults()).hasSize(4);
+    assertThat(first.ballotResults().stream().noneMatch(VerificationRun.BallotResult::cached)).isTrue();
+    assertThat(first.phases().stream().map(VerificationRun.Phase::name).toList())
+            .containsAtLeast("guardian proofs", "ballot proofs", "decryption shares");
+    assertThat(first.checksPassed()).isTrue();
+
+    // the next reuses every result, and still verifies
+    VerificationRun second = run(record, ledgerDir);
+    assertThat(second.ballotResults().stream().allMatch(VerificationRun.BallotResult::cached)).isTrue();
+    assertThat(second.checksPassed()).isTrue();
+
+    // a new ballot and a changed proof are checked again
+    Path ballots = record.resolve("submitted_ballots");
+    String json = Files.readString(ballots.resolve("submitted_ballot_9402450000000000231.json"));
+    Files.writeString(ballots.resolve("submitted_ballot_added.json"), json.replace("9402450000000000231", "added"));
+    Path changed = ballots.resolve("submitted_ballot_9402450000000000291.json");
+    Files.writeString(changed, Files.readString(changed).replace(
+            "F54F4959B02DAED75F45427D4F8677BA6F577A5582BABF638B4DA278A31B74DA",
+            "0000000000000000000000000000000000000000000000000000000000000001"));
+    VerificationRun third = run(record, ledgerDir);
+    List<VerificationRun.BallotResult> rechecked = third.ballotResults().stream().filter(r -> !r.cached()).toList();
+    assertThat(rechecked.stream().map(VerificationRun.BallotResult::ballotId).toList())
+            .containsExactly("added", "9402450000000000291");
+    assertThat(rechecked.stream().filter(r -> r.ballotId().equals("9402450000000000291")).findFirst().get().ok())
+            .isFalse();
+    assertThat(third.ballotResults()).hasSize(5);
+
+    // a different record key starts an empty ledger
+    Path context = record.resolve("context.json");
+    Files.writeString(context, Files.readString(context).replace(
+            "3F1967062975436FC368D73D7B22D6BA02AC26C60B6E07D9A38FCBD96A8A3195",
+            "3F1967062975436FC368D73D7B22D6BA02AC26C60B6E07D9A38FCBD96A8A3196"));
+    ElectionRecord rekeyed = new JsonConsumer(record.toString()).readElectionRecord();
+    assertThat(VerificationLedger.open(ledgerDir, record.toString(), rekeyed).previousSize()).isEqualTo(0);
+  }
+
+  private static VerificationRun run(Path record, Path ledgerDir) throws IOException {
+    ElectionRecord electionRecord = new JsonConsumer(record.toString()).readElectionRecord();
+    VerificationLedger ledger = VerificationLedger.open(ledgerDir, record.toString(), electionRecord);
+    VerificationRun run = new VerificationRun(electionRecord, 2, (phase, done, total, perSecond) -> {}, ledger, null);
+    run.run();
+    return run;
+  }
+
+  /** Copy the JSON files of the test record to a temporary directory, which the test changes. */
+  private Path copyRecord() throws IOException {
+    Path copy = Files.createTempDirectory("record");
+    try (Stream<Path> files = Files.walk(Path.of(topdir))) {
+      for (Path file : files.filter(file -> file.toString().endsWith(".json")).toList()) {
+        Path target = copy.resolve(Path.of(topdir).relativize(file));
+        Files.createDirectories(target.getParent());
+        Files.copy(file, target);
+      }
+    }
+    return copy;
+  }
+}